@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+/**
+ * The {@link ASTCache} holds the ASTs of compilation units. The ASTs are keyed
+ * by the handle of the unit, the options used to parse it and the
+ * modification stamp of its resource. The stamp makes sure that an AST is not
+ * returned after the unit was changed. The cache holds at most a fixed number
+ * of ASTs and evicts the least recently used ones.
+ * The ASTs are referenced softly, because ASTs with bindings hold on to the
+ * whole binding environment and can therefore be large.
+ * 
+ * The bindings of an AST also depend on the other units and the classpath of
+ * the project, which are not covered by the stamp. Therefore, the ASTs with
+ * bindings of a project are discarded as soon as a Java element delta reports
+ * a change in the project or in a project it requires (see
+ * {@link WorkspaceProjectGraph}). Changes of non-primary working copies are
+ * ignored, because they are not visible to other units. If a project is
+ * added or removed, all ASTs with bindings are discarded. The cache starts
+ * listening to deltas when it is used for the first time.
+ * 
+ * ASTs that were parsed in one batch share their binding environment. Thus,
+ * a cached AST with bindings keeps the environment of the whole batch alive
+ * until the garbage collector clears the soft references.
+ * 
+ * Working copies are not cached, because their content can change without
+ * changing the modification stamp.
+ */
+final class ASTCache implements IElementChangedListener {
+
+	private static final int DEFAULT_MAXIMUM_SIZE = 256;
+
+	private static ASTCache instance;
+
+	private static class Key {
+
+		private final String handleIdentifier;
+		private final String projectName;
+		private final ParseOptions options;
+
+		private Key(ICompilationUnit unit, ParseOptions options) {
+			this.handleIdentifier = unit.getHandleIdentifier();
+			this.projectName = unit.getJavaProject().getElementName();
+			this.options = options;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * handleIdentifier.hashCode() + options.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return handleIdentifier.equals(other.handleIdentifier) && options.equals(other.options);
+		}
+	}
+
+	private static class Entry {
+
+		private final long modificationStamp;
+		private final SoftReference<CompilationUnit> ast;
+
+		private Entry(long modificationStamp, CompilationUnit ast) {
+			this.modificationStamp = modificationStamp;
+			this.ast = new SoftReference<CompilationUnit>(ast);
+		}
+	}
+
+	private final Map<Key, Entry> entries;
+
+	/**
+	 * Is incremented whenever the ASTs with bindings are discarded. ASTs that
+	 * were parsed while this happened are not stored.
+	 */
+	private long generation;
+
+	private ASTCache(final int maximumSize) {
+		super();
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > maximumSize;
+			}
+		};
+	}
+
+	public static synchronized ASTCache getInstance() {
+		if (instance == null) {
+			instance = new ASTCache(DEFAULT_MAXIMUM_SIZE);
+			JavaCore.addElementChangedListener(instance,
+					ElementChangedEvent.POST_CHANGE | ElementChangedEvent.POST_RECONCILE);
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the current generation of the cache. The generation must be
+	 * obtained before a unit is parsed and passed to
+	 * {@link #put(ICompilationUnit, ParseOptions, long, long, CompilationUnit)}.
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Returns the modification stamp that identifies the current content of
+	 * the given unit or {@link IResource#NULL_STAMP} if the unit must not be
+	 * cached. The stamp must be obtained before the unit is parsed.
+	 */
+	public long getModificationStamp(ICompilationUnit unit) {
+		if (unit.isWorkingCopy()) {
+			return IResource.NULL_STAMP;
+		}
+		IResource resource = unit.getResource();
+		if (resource == null) {
+			return IResource.NULL_STAMP;
+		}
+		return resource.getModificationStamp();
+	}
+
+	/**
+	 * Returns the cached AST of the given unit or <code>null</code> if there is
+	 * no AST for the current content of the unit and the given options.
+	 */
+	public synchronized CompilationUnit get(ICompilationUnit unit, ParseOptions options) {
+		long modificationStamp = getModificationStamp(unit);
+		if (modificationStamp == IResource.NULL_STAMP) {
+			return null;
+		}
+		Key key = new Key(unit, options);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		CompilationUnit ast = entry.ast.get();
+		if (ast == null || entry.modificationStamp != modificationStamp) {
+			entries.remove(key);
+			return null;
+		}
+		return ast;
+	}
+
+	/**
+	 * Stores the AST of the given unit that was parsed with the given options
+	 * when the cache had the given generation and the unit had the given
+	 * modification stamp. ASTs with bindings are not stored if the generation
+	 * has changed in the meantime.
+	 */
+	public synchronized void put(ICompilationUnit unit, ParseOptions options, long generation,
+			long modificationStamp, CompilationUnit ast) {
+		if (modificationStamp == IResource.NULL_STAMP || ast == null) {
+			return;
+		}
+		if (options.isResolveBindings() && generation != this.generation) {
+			return;
+		}
+		entries.put(new Key(unit, options), new Entry(modificationStamp, ast));
+	}
+
+	/**
+	 * Discards all ASTs with bindings. ASTs without bindings depend only on
+	 * the content of their unit and are kept.
+	 */
+	public void invalidateBindings() {
+		invalidateBindings(null);
+	}
+
+	/**
+	 * Discards the ASTs with bindings of the projects with the given names or
+	 * of all projects if <code>projectNames</code> is <code>null</code>.
+	 */
+	private synchronized void invalidateBindings(Set<String> projectNames) {
+		generation++;
+		Iterator<Key> iterator = entries.keySet().iterator();
+		while (iterator.hasNext()) {
+			Key key = iterator.next();
+			if (key.options.isResolveBindings()
+					&& (projectNames == null || projectNames.contains(key.projectName))) {
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		generation++;
+		entries.clear();
+	}
+
+	@Override
+	public void elementChanged(ElementChangedEvent event) {
+		IJavaElementDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		Set<String> changedProjects = new LinkedHashSet<String>();
+		if (!collectChangedProjects(delta, changedProjects)) {
+			// a project was added or removed
+			invalidateBindings(null);
+			return;
+		}
+		if (changedProjects.isEmpty()) {
+			return;
+		}
+		WorkspaceProjectGraph graph = WorkspaceProjectGraph.getWorkspaceGraph();
+		Set<String> affectedProjects = new LinkedHashSet<String>(changedProjects);
+		affectedProjects.addAll(graph.getDependentProjects(changedProjects));
+		invalidateBindings(affectedProjects);
+	}
+
+	/**
+	 * Collects the names of the projects that contain relevant changes.
+	 * Returns <code>false</code> if a project was added or removed, in which
+	 * case the whole cache must be invalidated.
+	 */
+	private boolean collectChangedProjects(IJavaElementDelta delta, Set<String> result) {
+		IJavaElement element = delta.getElement();
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_MODEL:
+			for (IJavaElementDelta child : delta.getAffectedChildren()) {
+				if (!collectChangedProjects(child, result)) {
+					return false;
+				}
+			}
+			return true;
+		case IJavaElement.JAVA_PROJECT:
+			if (delta.getKind() != IJavaElementDelta.CHANGED) {
+				return false;
+			}
+			if (isRelevant(delta)) {
+				result.add(element.getElementName());
+			}
+			return true;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the given delta or one of its children
+	 * reports a change that is visible to other units, i.e., any change except
+	 * the ones of non-primary working copies.
+	 */
+	private boolean isRelevant(IJavaElementDelta delta) {
+		IJavaElement element = delta.getElement();
+		if (element.getElementType() == IJavaElement.COMPILATION_UNIT) {
+			return ((ICompilationUnit) element).getOwner() == null;
+		}
+		if (delta.getKind() != IJavaElementDelta.CHANGED
+				|| (delta.getFlags() & ~IJavaElementDelta.F_CHILDREN) != 0) {
+			return true;
+		}
+		for (IJavaElementDelta child : delta.getAffectedChildren()) {
+			if (isRelevant(child)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -13,19 +13,52 @@
  ******************************************************************************/
 package de.devboost.eclipse.jdtutilities;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.Job;
 
+/**
+ * The {@link AbstractCleanWorkspaceJob} cleans all projects in the workspace
+ * (or the projects passed to {@link #setProjects(Collection)}) and performs a
+ * full build afterwards. The projects are built in the order
+ * of their dependencies (see {@link WorkspaceProjectGraph#getBuildWaves()}).
+ * If the parallelism is greater than one, independent projects are built
+ * concurrently.
+ * 
+ * The job can be canceled between the projects. The time spent on each
+ * project is recorded in a {@link CleanWorkspaceReport} that is passed to
+ * {@link #handleReport(CleanWorkspaceReport)}.
+ */
 public abstract class AbstractCleanWorkspaceJob extends Job {
 	
+	private int parallelism = 1;
+
+	private IProject[] projects;
+
+	private volatile CleanWorkspaceReport report;
+
 	public AbstractCleanWorkspaceJob() {
 		super("Clean workspace");
 		
@@ -34,31 +67,245 @@ public abstract class AbstractCleanWorkspaceJob extends Job {
 		setRule(root);
 	}
 
+	/**
+	 * Returns the number of projects that are built concurrently.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of projects that are built concurrently. If the
+	 * parallelism is one (which is the default), the job holds the workspace
+	 * root rule and builds one project after another. Otherwise, the job does
+	 * not hold a rule and each build acquires the scheduling rules of the
+	 * builders of its project. Builders that support it only lock the project
+	 * they build, which allows to build independent projects at the same
+	 * time. This method must be called before the job is scheduled.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+		if (parallelism == 1) {
+			setRule(ResourcesPlugin.getWorkspace().getRoot());
+		} else {
+			setRule(null);
+		}
+	}
+
+	/**
+	 * Restricts the job to the given projects. If the projects are not set
+	 * (or set to <code>null</code>), all projects in the workspace are
+	 * cleaned and built. This method must be called before the job is
+	 * scheduled.
+	 */
+	public void setProjects(Collection<IProject> projects) {
+		if (projects == null) {
+			this.projects = null;
+		} else {
+			this.projects = projects.toArray(new IProject[projects.size()]);
+		}
+	}
+
+	/**
+	 * Returns the report of the last run of the job or <code>null</code> if
+	 * the job was not run yet.
+	 */
+	public CleanWorkspaceReport getReport() {
+		return report;
+	}
+
 	@Override
 	protected IStatus run(IProgressMonitor monitor) {
 		IWorkspace workspace = ResourcesPlugin.getWorkspace();
 		IWorkspaceRoot root = workspace.getRoot();
-		final IProject[] projects = root.getProjects();
-		logInfo("Cleaning workspace.");
-		for (IProject project : projects) {
-			logInfo("Cleaning project " + project.getName());
-			try {
-				project.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
-			} catch (CoreException ce) {
-				logException(ce);
+		final IProject[] projects = this.projects == null ? root.getProjects() : this.projects;
+		WorkspaceProjectGraph graph = getGraph(projects);
+		CleanWorkspaceReport report = new CleanWorkspaceReport();
+		this.report = report;
+		SubMonitor progress = SubMonitor.convert(monitor, "Clean workspace", 2 * projects.length);
+
+		boolean canceled = false;
+		try {
+			logInfo("Cleaning workspace.");
+			clean(workspace, projects, report, progress.newChild(projects.length));
+
+			List<List<IProject>> waves = graph.getBuildWaves();
+			if (parallelism == 1) {
+				for (List<IProject> wave : waves) {
+					for (IProject project : wave) {
+						checkCanceled(progress);
+						build(project, report, progress.newChild(1));
+					}
+				}
+			} else {
+				buildConcurrently(waves, report, progress);
 			}
-			
-			logInfo("Building project " + project.getName());
-			try {
-				project.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
-			} catch (CoreException ce) {
-				logException(ce);
+		} catch (OperationCanceledException e) {
+			canceled = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			canceled = true;
+		} finally {
+			report.finish(canceled);
+			if (monitor != null) {
+				monitor.done();
 			}
 		}
+
+		handleReport(report);
+		if (canceled) {
+			logInfo("Clean workspace job was canceled.");
+			return Status.CANCEL_STATUS;
+		}
 		setCleaned();
 		return Status.OK_STATUS;
 	}
 
+	/**
+	 * Returns the cached graph of the workspace if it contains exactly the
+	 * given projects. Otherwise, a graph is created for the projects.
+	 */
+	private WorkspaceProjectGraph getGraph(IProject[] projects) {
+		WorkspaceProjectGraph workspaceGraph = WorkspaceProjectGraph.getWorkspaceGraph();
+		if (workspaceGraph.getProjectArray().length == projects.length) {
+			boolean containsAll = true;
+			for (IProject project : projects) {
+				containsAll &= workspaceGraph.contains(project.getName());
+			}
+			if (containsAll) {
+				return workspaceGraph;
+			}
+		}
+		return new WorkspaceProjectGraph(projects);
+	}
+
+	/**
+	 * Cleans all projects in a single workspace operation. This makes sure
+	 * that resource change notifications are sent only once.
+	 */
+	private void clean(IWorkspace workspace, final IProject[] projects, final CleanWorkspaceReport report,
+			IProgressMonitor monitor) {
+		IWorkspaceRunnable cleanAll = new IWorkspaceRunnable() {
+			
+			@Override
+			public void run(IProgressMonitor monitor) throws CoreException {
+				SubMonitor progress = SubMonitor.convert(monitor, projects.length);
+				for (IProject project : projects) {
+					checkCanceled(progress);
+					logInfo("Cleaning project " + project.getName());
+					progress.subTask("Cleaning " + project.getName());
+					CleanWorkspaceReport.Stopwatch stopwatch = report.start();
+					try {
+						project.build(IncrementalProjectBuilder.CLEAN_BUILD, progress.newChild(1));
+					} catch (CoreException ce) {
+						logException(ce);
+					}
+					report.recordClean(project.getName(), stopwatch);
+				}
+			}
+		};
+		try {
+			workspace.run(cleanAll, workspace.getRoot(), IWorkspace.AVOID_UPDATE, monitor);
+		} catch (CoreException ce) {
+			logException(ce);
+		}
+	}
+
+	/**
+	 * Builds the given waves one after another. The projects of each wave are
+	 * built concurrently.
+	 */
+	private void buildConcurrently(List<List<IProject>> waves, final CleanWorkspaceReport report,
+			final SubMonitor progress) throws InterruptedException {
+		// progress monitors are not thread-safe, so the workers only check
+		// for cancellation and progress is reported by this thread
+		final IProgressMonitor workerMonitor = new NullProgressMonitor() {
+
+			@Override
+			public boolean isCanceled() {
+				return progress.isCanceled();
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			for (List<IProject> wave : waves) {
+				checkCanceled(progress);
+				if (wave.size() == 1) {
+					build(wave.get(0), report, progress.newChild(1));
+					continue;
+				}
+
+				List<Future<Void>> futures = new ArrayList<Future<Void>>(wave.size());
+				for (final IProject project : wave) {
+					futures.add(executor.submit(new Callable<Void>() {
+
+						@Override
+						public Void call() throws Exception {
+							if (!workerMonitor.isCanceled()) {
+								build(project, report, workerMonitor);
+							}
+							return null;
+						}
+					}));
+				}
+				for (Future<Void> future : futures) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						Throwable cause = e.getCause();
+						logException(cause instanceof Exception ? (Exception) cause : e);
+					}
+					progress.worked(1);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void build(IProject project, CleanWorkspaceReport report, IProgressMonitor monitor) {
+		logInfo("Building project " + project.getName());
+		monitor.subTask("Building " + project.getName());
+		CleanWorkspaceReport.Stopwatch stopwatch = report.start();
+		try {
+			project.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		} catch (CoreException ce) {
+			logException(ce);
+		}
+		report.recordBuild(project.getName(), stopwatch, countProblemMarkers(project));
+	}
+
+	private int countProblemMarkers(IProject project) {
+		if (!project.isAccessible()) {
+			return 0;
+		}
+		try {
+			return project.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE).length;
+		} catch (CoreException ce) {
+			logException(ce);
+			return 0;
+		}
+	}
+
+	private void checkCanceled(IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	/**
+	 * Is called with the report of each run, regardless of whether the run
+	 * was canceled. The default implementation logs the total time.
+	 * Subclasses can override this method to store or export the report (see
+	 * {@link CleanWorkspaceReport#toJSON()}).
+	 */
+	protected void handleReport(CleanWorkspaceReport report) {
+		logInfo("Clean workspace job took " + report.getTotalWallNanos() / 1000000 + " ms.");
+	}
+
 	protected abstract void setCleaned();
 
 	protected abstract void logException(Exception e);
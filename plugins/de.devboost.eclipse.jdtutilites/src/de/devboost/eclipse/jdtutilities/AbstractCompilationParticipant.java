@@ -15,65 +15,339 @@ package de.devboost.eclipse.jdtutilities;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.compiler.BuildContext;
 import org.eclipse.jdt.core.compiler.CompilationParticipant;
 
 /**
  * The AbstractCompilationParticipant is a default implementation of the JDT
- * {@link CompilationParticipant} that collects all files that are build in a
- * list and calls the template method {@link #buildFinished(BuildContext)} for
- * each files once the build is finished.
+ * {@link CompilationParticipant} that collects all files that are build and
+ * calls the template method {@link #buildFinished(Collection)} with the files
+ * of a project once the build of the project is finished.
+ * 
+ * The files are collected per project in lock-free queues. Thus, projects can
+ * be built concurrently and {@link #buildFinished(Collection)} receives only
+ * the files of the project that was built. Files that were built multiple
+ * times are passed to {@link #buildFinished(Collection)} only once (see
+ * {@link CompilationEventCoalescer}).
+ * 
+ * If {@link #isAsynchronous(IJavaProject)} returns <code>true</code> for a
+ * project, the files are not processed by the builder thread. Instead, they
+ * are handed to a job that runs with the rule returned by
+ * {@link #getSchedulingRule(IJavaProject)} once no further build of the
+ * project happened within {@link #getCoalescingWindow()}. If more than
+ * {@link #getMaximumPendingEvents()} files are waiting to be processed, the
+ * builder thread processes the pending files of the project together with the
+ * files it has just built (back-pressure).
+ * 
+ * The participant records the number of built files, the time spent in
+ * {@link #buildStarting(CompilationEvent)} and the latency of
+ * {@link #buildFinished(Collection)} per project (see {@link #getStatistics()}).
+ * Exceptions thrown by {@link #buildFinished(Collection)} are counted and
+ * passed to {@link #handleBuildFinishedFailure(String, Throwable)}, which
+ * passes them to {@link #logWarning(String, Exception)} by default.
  * 
  * The AbstractCompilationParticipant is active for all Java projects.
  */
 public abstract class AbstractCompilationParticipant extends CompilationParticipant {
 
+	private static final int DEFAULT_MAXIMUM_PENDING_EVENTS = 10000;
+
+	/**
+	 * The {@link PostBuildJob} processes the files of a single project
+	 * asynchronously. Events that are added while the job is waiting are
+	 * merged with the pending events. Scheduling a job that is already
+	 * waiting does not delay it. Thus, the job reschedules itself until no
+	 * events were added for the whole coalescing window. The pending events
+	 * are taken and processed while holding the processing lock of the job,
+	 * which is also held if the builder processes the files of the project
+	 * itself (see {@link #processPendingEvents(List)}).
+	 */
+	private class PostBuildJob extends Job {
+
+		private final CompilationEventCoalescer pendingEvents = new CompilationEventCoalescer();
+
+		private final String projectName;
+
+		/**
+		 * The time (see {@link System#nanoTime()}) at which events were added
+		 * last.
+		 */
+		private volatile long lastAddTime;
+
+		/**
+		 * Makes sure that the files of the project are never processed by
+		 * two threads at the same time.
+		 */
+		private final Object processingLock = new Object();
+
+		private PostBuildJob(IJavaProject project) {
+			super("Processing build results of " + project.getElementName());
+			this.projectName = project.getElementName();
+			setRule(getSchedulingRule(project));
+			setSystem(true);
+		}
+
+		private synchronized void add(List<CompilationEvent> events) {
+			pendingEventCount.addAndGet(pendingEvents.add(events));
+			lastAddTime = System.nanoTime();
+		}
+
+		private synchronized List<CompilationEvent> takePendingEvents() {
+			List<CompilationEvent> events = pendingEvents.takeEvents();
+			pendingEventCount.addAndGet(-events.size());
+			return events;
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			long window = getCoalescingWindow();
+			if (window > 0) {
+				long quietTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastAddTime);
+				if (quietTime < window) {
+					// the project was built again within the window
+					schedule(window - quietTime);
+					return Status.OK_STATUS;
+				}
+			}
+			processPendingEvents(Collections.<CompilationEvent> emptyList());
+			return Status.OK_STATUS;
+		}
+
+		/**
+		 * Processes the pending events together with the given (newer)
+		 * events. Newer events of a file replace the pending ones.
+		 */
+		private void processPendingEvents(List<CompilationEvent> newEvents) {
+			synchronized (processingLock) {
+				List<CompilationEvent> events = takePendingEvents();
+				if (!newEvents.isEmpty()) {
+					events = new ArrayList<CompilationEvent>(events);
+					events.addAll(newEvents);
+					events = CompilationEventCoalescer.coalesce(events);
+				}
+				if (!events.isEmpty()) {
+					invokeBuildFinished(projectName, events);
+				}
+			}
+		}
+	}
+
 	/**
 	 * All files passed to {@link #buildStarting(BuildContext[], boolean)} are
-	 * stored in this list, because there can be multiple calls to
-	 * {@link #buildStarting(BuildContext[], boolean)} before 
+	 * stored in the queue of their project, because there can be multiple
+	 * calls to {@link #buildStarting(BuildContext[], boolean)} before 
 	 * {@link #buildFinished(IJavaProject)} is eventually called.
-	 * In {@link #buildFinished(IJavaProject)} we process the list and remove
-	 * the files after processing.
+	 * In {@link #buildFinished(IJavaProject)} we remove the files of the
+	 * project from its queue and process them.
+	 */
+	private final ConcurrentMap<String, CompilationEventQueue> queues = new ConcurrentHashMap<String, CompilationEventQueue>();
+
+	private final ConcurrentMap<String, PostBuildJob> postBuildJobs = new ConcurrentHashMap<String, PostBuildJob>();
+
+	/**
+	 * The number of events that wait to be processed by post build jobs.
 	 */
-	private List<CompilationEvent> files = new ArrayList<CompilationEvent>();
+	private final AtomicInteger pendingEventCount = new AtomicInteger();
+
+	private final CompilationStatistics statistics = new CompilationStatistics();
 
 	@Override
 	public void buildStarting(BuildContext[] files, boolean isBatch) {
 		super.buildStarting(files, isBatch);
-		if (files == null) {
+		if (files == null || files.length == 0) {
 			return;
 		}
-		for (BuildContext file : files) {
-			CompilationEvent event = new CompilationEvent(file, isBatch);
-			this.files.add(event);
-			buildStarting(event);
+		// the builder passes the files of one project at a time
+		String projectName = getProjectName(files[0]);
+		CompilationEvent[] events = new CompilationEvent[files.length];
+		long startTime = System.nanoTime();
+		try {
+			for (int i = 0; i < files.length; i++) {
+				CompilationEvent event = new CompilationEvent(files[i], isBatch);
+				events[i] = event;
+				buildStarting(event);
+			}
+		} finally {
+			long duration = System.nanoTime() - startTime;
+			statistics.getOrCreate(projectName).recordBuildStarting(files.length, isBatch, duration);
+		}
+		getQueue(projectName).push(events);
+	}
+
+	private String getProjectName(BuildContext file) {
+		IFile resource = file.getFile();
+		if (resource == null) {
+			return "";
+		}
+		return resource.getProject().getName();
+	}
+
+	private CompilationEventQueue getQueue(String projectName) {
+		CompilationEventQueue queue = queues.get(projectName);
+		if (queue == null) {
+			CompilationEventQueue newQueue = new CompilationEventQueue();
+			queue = queues.putIfAbsent(projectName, newQueue);
+			if (queue == null) {
+				queue = newQueue;
+			}
 		}
+		return queue;
 	}
 	
 	@Override
 	public void buildFinished(IJavaProject project) {
 		super.buildFinished(project);
 		
-		try {
-			// we use an iterator to avoid ConcurrentModificationExceptions
-			List<CompilationEvent> events = new ArrayList<CompilationEvent>();
-			Iterator<CompilationEvent> it = files.iterator();
-			while (it.hasNext()) {
-				CompilationEvent event = it.next();
-				events.add(event);
-				it.remove();
+		CompilationEventQueue queue = queues.get(project.getElementName());
+		List<CompilationEvent> events;
+		if (queue == null) {
+			events = Collections.emptyList();
+		} else {
+			events = queue.drain();
+		}
+
+		if (!isAsynchronous(project)) {
+			invokeBuildFinished(project.getElementName(), CompilationEventCoalescer.coalesce(events));
+			return;
+		}
+		if (events.isEmpty()) {
+			return;
+		}
+		PostBuildJob job = getPostBuildJob(project);
+		if (pendingEventCount.get() + events.size() > getMaximumPendingEvents()) {
+			// the jobs do not keep up with the builder, so the builder
+			// processes the pending files of the project together with the
+			// files it has just built. If the job is processing files of the
+			// project right now, the builder waits for it.
+			job.processPendingEvents(events);
+			return;
+		}
+		job.add(events);
+		// has no effect if the job is already waiting, in which case the job
+		// extends the window itself
+		job.schedule(getCoalescingWindow());
+	}
+
+	private PostBuildJob getPostBuildJob(IJavaProject project) {
+		String projectName = project.getElementName();
+		PostBuildJob job = postBuildJobs.get(projectName);
+		if (job == null) {
+			PostBuildJob newJob = new PostBuildJob(project);
+			job = postBuildJobs.putIfAbsent(projectName, newJob);
+			if (job == null) {
+				job = newJob;
 			}
+		}
+		return job;
+	}
+
+	private void invokeBuildFinished(String projectName, List<CompilationEvent> events) {
+		CompilationStatistics.ProjectStatistics projectStatistics = statistics.getOrCreate(projectName);
+		long startTime = System.nanoTime();
+		try {
 			buildFinished(events);
 		} catch (Throwable t) {
-			// TODO: handle exception
-			t.printStackTrace();
+			// a failing participant must not break the build
+			projectStatistics.recordFailure(t);
+			handleBuildFinishedFailure(projectName, t);
+		} finally {
+			projectStatistics.recordBuildFinished(events.size(), System.nanoTime() - startTime);
 		}
 	}
+
+	/**
+	 * Returns the statistics that are recorded for this participant (e.g., the
+	 * number of built files and the latency of
+	 * {@link #buildFinished(Collection)}).
+	 */
+	public CompilationStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Called if {@link #buildFinished(Collection)} throws an exception for the
+	 * files of the given project. The failure is counted in the
+	 * {@link #getStatistics() statistics} before this method is called. The
+	 * default implementation passes the failure to
+	 * {@link #logWarning(String, Exception)}.
+	 */
+	protected void handleBuildFinishedFailure(String projectName, Throwable failure) {
+		Exception exception;
+		if (failure instanceof Exception) {
+			exception = (Exception) failure;
+		} else {
+			exception = new RuntimeException(failure);
+		}
+		logWarning("Processing the build results of project " + projectName + " failed.", exception);
+	}
+
+	/**
+	 * Returns <code>true</code> if the files built for the given project are
+	 * processed asynchronously. The default implementation returns
+	 * <code>false</code>, i.e., {@link #buildFinished(Collection)} is called
+	 * by the builder thread before the build of the project finishes.
+	 * Participants that must finish their work before the next build starts
+	 * must not enable the asynchronous mode.
+	 * 
+	 * In the asynchronous mode, {@link #buildFinished(Collection)} is usually
+	 * called after the build has ended. Thus, the build contexts of the
+	 * events must not be used to record problems or generated files (e.g.,
+	 * {@link BuildContext#recordNewProblems(org.eclipse.jdt.core.compiler.CategorizedProblem[])}
+	 * or {@link BuildContext#recordAddedGeneratedFiles(org.eclipse.core.resources.IFile[])}),
+	 * because such records are ignored. If too many files are pending (see
+	 * {@link #getMaximumPendingEvents()}), the builder processes the pending
+	 * files of the project itself. In any case,
+	 * {@link #buildFinished(Collection)} is never called for the same project
+	 * by two threads at the same time.
+	 */
+	protected boolean isAsynchronous(IJavaProject project) {
+		return false;
+	}
+
+	/**
+	 * Returns the scheduling rule that is held while the files built for the
+	 * given project are processed asynchronously. The default implementation
+	 * returns the project. Participants that modify resources in other
+	 * projects must return a rule that covers these resources.
+	 */
+	protected ISchedulingRule getSchedulingRule(IJavaProject project) {
+		return project.getProject();
+	}
+
+	/**
+	 * Returns the time (in milliseconds) that the asynchronous processing
+	 * waits for further builds of the same project before it processes the
+	 * built files. Each build of the project within this window restarts the
+	 * window. The default implementation returns zero, i.e., files are
+	 * processed as soon as possible.
+	 */
+	protected long getCoalescingWindow() {
+		return 0;
+	}
+
+	/**
+	 * Returns the maximum number of files that wait to be processed
+	 * asynchronously. If this number would be exceeded, the builder thread
+	 * processes the pending files of the project and the files it has just
+	 * built before it continues.
+	 */
+	protected int getMaximumPendingEvents() {
+		return DEFAULT_MAXIMUM_PENDING_EVENTS;
+	}
 	
 	@Override
 	public boolean isActive(IJavaProject project) {
@@ -83,4 +357,6 @@ public abstract class AbstractCompilationParticipant extends CompilationParticip
 	public abstract void buildStarting(CompilationEvent event);
 
 	public abstract void buildFinished(Collection<CompilationEvent> events);
+
+	protected abstract void logWarning(String message, Exception e);
 }
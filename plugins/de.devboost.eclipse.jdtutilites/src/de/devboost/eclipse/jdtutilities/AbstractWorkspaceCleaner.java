@@ -13,11 +13,28 @@
  ******************************************************************************/
 package de.devboost.eclipse.jdtutilities;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.jobs.Job;
 
 /**
  * The {@link AbstractWorkspaceCleaner} can be used to perform a clean build on
  * the whole workspace.
+ * 
+ * If {@link #useFingerprints()} is enabled, the cleaner additionally stores a
+ * fingerprint for each project (see {@link ProjectFingerprinter}) after a
+ * clean build. If {@link #mustClean()} returns <code>false</code>, only the
+ * projects whose fingerprint has changed (and the projects that depend on
+ * them) are cleaned and rebuilt. Projects without a stored fingerprint are
+ * considered to be changed.
  */
 public abstract class AbstractWorkspaceCleaner {
 
@@ -33,12 +50,75 @@ public abstract class AbstractWorkspaceCleaner {
 	private Job createRefreshWorkspaceOnFirstStartupJob() {
 		if (mustClean()) {
 			logInfo("Clean build is required. Scheduling clean workspace job.");
-			Job job = createCleanAllJob();
+			Job job = createCleanAllJob(null);
 			return job;
-		} else {
-			logInfo("No clean build is required.");
-			return null;
 		}
+		if (useFingerprints()) {
+			List<IProject> changedProjects = getProjectsWithChangedFingerprint();
+			if (!changedProjects.isEmpty()) {
+				logInfo("Clean build is required for " + changedProjects.size()
+						+ " project(s). Scheduling clean workspace job.");
+				return createCleanAllJob(changedProjects);
+			}
+		}
+		logInfo("No clean build is required.");
+		return null;
+	}
+
+	/**
+	 * Returns the projects whose fingerprint has changed together with all
+	 * projects that depend on them.
+	 */
+	private List<IProject> getProjectsWithChangedFingerprint() {
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		IProject[] projects = root.getProjects();
+		ProjectFingerprinter fingerprinter = createFingerprinter();
+		Set<String> changedProjects = new LinkedHashSet<String>();
+		for (IProject project : projects) {
+			if (!project.isAccessible()) {
+				continue;
+			}
+			try {
+				if (fingerprinter.hasChanged(project)) {
+					changedProjects.add(project.getName());
+				}
+			} catch (CoreException e) {
+				logException(e);
+				changedProjects.add(project.getName());
+			}
+		}
+
+		WorkspaceProjectGraph graph = WorkspaceProjectGraph.getWorkspaceGraph();
+		Set<String> affectedProjects = graph.getDependentProjects(changedProjects);
+		// projects that were added after the graph was computed
+		affectedProjects.addAll(changedProjects);
+		List<IProject> result = new ArrayList<IProject>();
+		for (String projectName : affectedProjects) {
+			result.add(root.getProject(projectName));
+		}
+		return result;
+	}
+
+	/**
+	 * Stores the current fingerprints of all accessible projects.
+	 */
+	private void storeFingerprints() {
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		ProjectFingerprinter fingerprinter = createFingerprinter();
+		for (IProject project : root.getProjects()) {
+			if (!project.isAccessible()) {
+				continue;
+			}
+			try {
+				fingerprinter.storeFingerprint(project);
+			} catch (CoreException e) {
+				logException(e);
+			}
+		}
+	}
+
+	private ProjectFingerprinter createFingerprinter() {
+		return new ProjectFingerprinter(getFingerprintBundleIDs());
 	}
 
 	protected abstract void setCleaned();
@@ -49,12 +129,54 @@ public abstract class AbstractWorkspaceCleaner {
 
 	protected abstract void logInfo(String message);
 
-	private Job createCleanAllJob() {
-		Job cleanAllJob = new AbstractCleanWorkspaceJob() {
+	/**
+	 * Returns <code>true</code> if projects are rebuilt selectively based on
+	 * their fingerprints. The default implementation returns
+	 * <code>false</code>.
+	 */
+	protected boolean useFingerprints() {
+		return false;
+	}
+
+	/**
+	 * Returns the symbolic names of the bundles whose versions are part of
+	 * the project fingerprints. Subclasses should add the bundles that
+	 * contribute builders or generators. The default implementation returns
+	 * the JDT core bundle.
+	 */
+	protected String[] getFingerprintBundleIDs() {
+		return new String[] { "org.eclipse.jdt.core" };
+	}
+
+	/**
+	 * Returns the number of projects that are built concurrently by the clean
+	 * workspace job. The default implementation returns one, i.e., projects
+	 * are built one after another. Subclasses can override this method to
+	 * build independent projects in parallel.
+	 */
+	protected int getBuildParallelism() {
+		return 1;
+	}
+
+	/**
+	 * Is called with the timing report of the clean workspace job. The default
+	 * implementation logs the total time. Subclasses can override this method
+	 * to store the report (e.g., as JSON, see
+	 * {@link CleanWorkspaceReport#toJSON()}).
+	 */
+	protected void handleReport(CleanWorkspaceReport report) {
+		logInfo("Clean workspace job took " + report.getTotalWallNanos() / 1000000 + " ms.");
+	}
+
+	private Job createCleanAllJob(Collection<IProject> projects) {
+		AbstractCleanWorkspaceJob cleanAllJob = new AbstractCleanWorkspaceJob() {
 
 			@Override
 			protected void setCleaned() {
 				AbstractWorkspaceCleaner.this.setCleaned();
+				if (useFingerprints()) {
+					storeFingerprints();
+				}
 			}
 
 			@Override
@@ -66,8 +188,15 @@ public abstract class AbstractWorkspaceCleaner {
 			protected void logInfo(String message) {
 				AbstractWorkspaceCleaner.this.logInfo(message);
 			}
+
+			@Override
+			protected void handleReport(CleanWorkspaceReport report) {
+				AbstractWorkspaceCleaner.this.handleReport(report);
+			}
 			
 		};
+		cleanAllJob.setParallelism(getBuildParallelism());
+		cleanAllJob.setProjects(projects);
 		return cleanAllJob;
 	}
 }
@@ -0,0 +1,808 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMemberValuePair;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.Annotation;
+import org.eclipse.jdt.core.dom.ArrayInitializer;
+import org.eclipse.jdt.core.dom.BooleanLiteral;
+import org.eclipse.jdt.core.dom.CharacterLiteral;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ImportDeclaration;
+import org.eclipse.jdt.core.dom.MemberValuePair;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.NormalAnnotation;
+import org.eclipse.jdt.core.dom.NumberLiteral;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.SingleMemberAnnotation;
+import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.TypeLiteral;
+
+/**
+ * The {@link AnnotationIndex} maps the annotations of all types declared in
+ * the source folders of a Java project to the annotated types and the values
+ * of the annotation properties. Each annotation is indexed by its simple name
+ * and by its qualified name (if the name can be resolved). Types are
+ * identified by their fully qualified name (using dots to separate the names
+ * of nested types).
+ *
+ * The annotations are read from ASTs that are parsed without bindings and
+ * without method bodies. Therefore, only values that are literals are
+ * available and annotation names are resolved using the imports and the
+ * package of the compilation unit.
+ *
+ * The index is built once by calling {@link #build(IProgressMonitor)}. Then,
+ * it listens to Java element deltas and re-indexes all changed compilation
+ * units lazily, i.e., right before the next query is answered. Thus, queries
+ * take constant time unless units were changed since the last query. Call
+ * {@link #dispose()} to stop listening to changes.
+ *
+ * Only one thread refreshes the index at a time. Other threads that query the
+ * index wait until the running refresh is finished. A unit stays dirty until
+ * its annotations were stored, so a failed refresh is repeated on the next
+ * query. Results for units that were changed or removed while they were
+ * parsed are dropped.
+ */
+public class AnnotationIndex implements IElementChangedListener {
+
+	private static final int CONTAINER_CHANGED = IJavaElementDelta.F_OPENED
+			| IJavaElementDelta.F_ADDED_TO_CLASSPATH
+			| IJavaElementDelta.F_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED;
+
+	private static final int CONTAINER_REMOVED = IJavaElementDelta.F_CLOSED
+			| IJavaElementDelta.F_REMOVED_FROM_CLASSPATH;
+
+	private static final int UNIT_CHANGED = IJavaElementDelta.F_CONTENT
+			| IJavaElementDelta.F_PRIMARY_RESOURCE;
+
+	private final IJavaProject javaProject;
+
+	/**
+	 * Maps annotation names to the names of the types that carry the
+	 * annotation.
+	 */
+	private final Map<String, Set<String>> annotatedTypes = new HashMap<String, Set<String>>();
+
+	/**
+	 * The names of the annotations whose set of type names was returned by a
+	 * query. These sets are copied before they are modified.
+	 */
+	private final Set<String> publishedAnnotationNames = new HashSet<String>();
+
+	/**
+	 * Maps type names to the annotations of the type, which are in turn mapped
+	 * to their property values.
+	 */
+	private final Map<String, Map<String, Map<String, Object>>> annotationValues = new HashMap<String, Map<String, Map<String, Object>>>();
+
+	/**
+	 * Maps the paths of compilation units to the names of the annotated types
+	 * that are declared in the unit.
+	 */
+	private final Map<String, Set<String>> unitTypes = new HashMap<String, Set<String>>();
+
+	/**
+	 * All compilation units that must be (re-)indexed.
+	 */
+	private final Set<ICompilationUnit> dirtyUnits = new LinkedHashSet<ICompilationUnit>();
+
+	/**
+	 * All package fragment roots and packages that were added since the last
+	 * query. The compilation units that are contained in these elements are
+	 * determined when the index is refreshed.
+	 */
+	private final List<IJavaElement> dirtyContainers = new ArrayList<IJavaElement>();
+
+	/**
+	 * Is incremented whenever a unit is changed or removed.
+	 */
+	private long changeCount;
+
+	/**
+	 * Maps the paths of the units that were changed or removed during the
+	 * current refresh to the change count at that time. The annotations of a
+	 * unit are only stored if the unit was not changed after the batch that
+	 * contains the unit was started.
+	 */
+	private final Map<String, Long> lastChanges = new HashMap<String, Long>();
+
+	/**
+	 * Is held while the index is refreshed.
+	 */
+	private final Object refreshLock = new Object();
+
+	private boolean warm;
+	private boolean listening;
+
+	public AnnotationIndex(IJavaProject javaProject) {
+		super();
+		this.javaProject = javaProject;
+	}
+
+	/**
+	 * Indexes the annotations of all types in the project and starts listening
+	 * to Java element deltas.
+	 */
+	public void build(IProgressMonitor monitor) throws JavaModelException {
+		synchronized (this) {
+			if (!listening) {
+				JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+				listening = true;
+			}
+		}
+
+		Set<ICompilationUnit> units = new LinkedHashSet<ICompilationUnit>();
+		collectCompilationUnits(javaProject, units);
+		synchronized (this) {
+			for (ICompilationUnit unit : units) {
+				markDirty(unit);
+			}
+		}
+		refresh(SubMonitor.convert(monitor, "Building annotation index", 1));
+
+		synchronized (this) {
+			warm = true;
+		}
+	}
+
+	/**
+	 * Stops listening to Java element deltas. After calling this method the
+	 * index is cold and does not answer queries anymore.
+	 */
+	public synchronized void dispose() {
+		if (listening) {
+			JavaCore.removeElementChangedListener(this);
+			listening = false;
+		}
+		warm = false;
+	}
+
+	/**
+	 * Returns <code>true</code> if the index was built and is kept up to date.
+	 */
+	public synchronized boolean isWarm() {
+		return warm;
+	}
+
+	/**
+	 * Returns the fully qualified names of all types that are annotated with
+	 * the annotation with the given (simple or qualified) name. If the index
+	 * is cold, <code>null</code> is returned. The returned set is an
+	 * unmodifiable snapshot, i.e., it does not reflect later changes.
+	 */
+	public Set<String> getAnnotatedTypes(String annotationName) throws JavaModelException {
+		if (!isWarm()) {
+			return null;
+		}
+		refresh();
+
+		synchronized (this) {
+			Set<String> typeNames = annotatedTypes.get(annotationName);
+			if (typeNames == null) {
+				return Collections.emptySet();
+			}
+			publishedAnnotationNames.add(annotationName);
+			return Collections.unmodifiableSet(typeNames);
+		}
+	}
+
+	/**
+	 * Returns the values of the properties of the given annotation on the type
+	 * with the given name. Only properties that are set explicitly are
+	 * contained (i.e., default values are not). If the type does not carry
+	 * the annotation or if the index is cold, <code>null</code> is returned.
+	 */
+	public Map<String, Object> getAnnotationValues(String typeName, String annotationName)
+			throws JavaModelException {
+		if (!isWarm()) {
+			return null;
+		}
+		refresh();
+
+		synchronized (this) {
+			Map<String, Map<String, Object>> annotations = annotationValues.get(typeName);
+			if (annotations == null) {
+				return null;
+			}
+			return annotations.get(annotationName);
+		}
+	}
+
+	/**
+	 * Returns the value of the given property of the given annotation on the
+	 * type with the given name (see {@link IMemberValuePair#getValue()}). If
+	 * the property is not set explicitly, the type does not carry the
+	 * annotation or the index is cold, <code>null</code> is returned.
+	 */
+	public Object getAnnotationValue(String typeName, String annotationName, String propertyName)
+			throws JavaModelException {
+		Map<String, Object> values = getAnnotationValues(typeName, annotationName);
+		if (values == null) {
+			return null;
+		}
+		return values.get(propertyName);
+	}
+
+	@Override
+	public void elementChanged(ElementChangedEvent event) {
+		IJavaElementDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		synchronized (this) {
+			processDelta(delta);
+		}
+	}
+
+	private void processDelta(IJavaElementDelta delta) {
+		IJavaElement element = delta.getElement();
+		int kind = delta.getKind();
+		int flags = delta.getFlags();
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_MODEL:
+			break;
+		case IJavaElement.JAVA_PROJECT:
+			if (!javaProject.equals(element)) {
+				return;
+			}
+			// fall through
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+		case IJavaElement.PACKAGE_FRAGMENT:
+			if (kind == IJavaElementDelta.REMOVED || (flags & CONTAINER_REMOVED) != 0) {
+				boolean recursive = element.getElementType() != IJavaElement.PACKAGE_FRAGMENT;
+				removeAll(element, recursive);
+				return;
+			}
+			if (kind == IJavaElementDelta.ADDED || (flags & CONTAINER_CHANGED) != 0) {
+				dirtyContainers.add(element);
+				return;
+			}
+			break;
+		case IJavaElement.COMPILATION_UNIT:
+			ICompilationUnit unit = (ICompilationUnit) element;
+			if (unit.getOwner() != null) {
+				// ignore non-primary working copies
+				return;
+			}
+			if (kind == IJavaElementDelta.REMOVED) {
+				dirtyUnits.remove(unit);
+				String unitPath = unit.getPath().toString();
+				recordChange(unitPath);
+				removeUnit(unitPath);
+			} else if (kind == IJavaElementDelta.ADDED || (flags & UNIT_CHANGED) != 0) {
+				markDirty(unit);
+			}
+			return;
+		default:
+			return;
+		}
+
+		for (IJavaElementDelta child : delta.getAffectedChildren()) {
+			processDelta(child);
+		}
+	}
+
+	/**
+	 * Re-indexes all compilation units that were changed since the last call
+	 * to this method.
+	 */
+	private void refresh() throws JavaModelException {
+		synchronized (this) {
+			if (dirtyUnits.isEmpty() && dirtyContainers.isEmpty()) {
+				return;
+			}
+		}
+		refresh(null);
+	}
+
+	private void refresh(IProgressMonitor monitor) throws JavaModelException {
+		synchronized (refreshLock) {
+			try {
+				collectDirtyContainers();
+				List<ICompilationUnit> unitsToIndex;
+				synchronized (this) {
+					unitsToIndex = new ArrayList<ICompilationUnit>(dirtyUnits);
+				}
+				index(unitsToIndex, monitor);
+			} finally {
+				synchronized (this) {
+					// no batch is running anymore
+					lastChanges.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks the compilation units in all added containers as dirty. A
+	 * container is only removed from the list of dirty containers after its
+	 * units were collected.
+	 */
+	private void collectDirtyContainers() throws JavaModelException {
+		List<IJavaElement> containers;
+		synchronized (this) {
+			if (dirtyContainers.isEmpty()) {
+				return;
+			}
+			containers = new ArrayList<IJavaElement>(dirtyContainers);
+		}
+
+		Map<IJavaElement, Set<ICompilationUnit>> containerUnits = new LinkedHashMap<IJavaElement, Set<ICompilationUnit>>();
+		for (IJavaElement container : containers) {
+			Set<ICompilationUnit> units = new LinkedHashSet<ICompilationUnit>();
+			collectCompilationUnits(container, units);
+			containerUnits.put(container, units);
+		}
+
+		synchronized (this) {
+			for (Map.Entry<IJavaElement, Set<ICompilationUnit>> entry : containerUnits.entrySet()) {
+				// the container was removed in the meantime
+				if (!dirtyContainers.remove(entry.getKey())) {
+					continue;
+				}
+				for (ICompilationUnit unit : entry.getValue()) {
+					markDirty(unit);
+				}
+			}
+		}
+	}
+
+	private void markDirty(ICompilationUnit unit) {
+		recordChange(unit.getPath().toString());
+		dirtyUnits.add(unit);
+	}
+
+	private void recordChange(String unitPath) {
+		changeCount++;
+		lastChanges.put(unitPath, changeCount);
+	}
+
+	/**
+	 * Returns <code>true</code> if the given unit is dirty and was not changed
+	 * after the given change count.
+	 */
+	private boolean isUnchangedSince(ICompilationUnit unit, long count) {
+		if (!dirtyUnits.contains(unit)) {
+			return false;
+		}
+		Long lastChange = lastChanges.get(unit.getPath().toString());
+		return lastChange == null || lastChange.longValue() <= count;
+	}
+
+	/**
+	 * Indexes the given compilation units. The units are parsed in one batch
+	 * without bindings and without method bodies, which is much cheaper than
+	 * reading the annotations from the Java model.
+	 */
+	private void index(Collection<ICompilationUnit> units, IProgressMonitor monitor) {
+		final long count;
+		synchronized (this) {
+			count = changeCount;
+		}
+		List<ICompilationUnit> existingUnits = new ArrayList<ICompilationUnit>(units.size());
+		for (ICompilationUnit unit : units) {
+			if (unit.exists()) {
+				existingUnits.add(unit);
+			} else {
+				synchronized (this) {
+					if (isUnchangedSince(unit, count)) {
+						dirtyUnits.remove(unit);
+						removeUnit(unit.getPath().toString());
+					}
+				}
+			}
+		}
+		if (existingUnits.isEmpty()) {
+			return;
+		}
+
+		// the results of looking up types are shared by all units of the batch
+		final Map<String, Boolean> typeExistence = new HashMap<String, Boolean>();
+		ASTParser parser = ParseOptions.DEFAULT.withResolveBindings(false).withIgnoreMethodBodies(true)
+				.createParser(true);
+		parser.setProject(javaProject);
+		ICompilationUnit[] unitArray = existingUnits.toArray(new ICompilationUnit[existingUnits.size()]);
+		// The units are parsed without holding the lock, because parsing may
+		// take a while.
+		parser.createASTs(unitArray, new String[0], new ASTRequestor() {
+
+			@Override
+			public void acceptAST(ICompilationUnit source, CompilationUnit ast) {
+				index(source, ast, typeExistence, count);
+			}
+		}, monitor);
+	}
+
+	private void index(ICompilationUnit unit, CompilationUnit ast, Map<String, Boolean> typeExistence, long count) {
+		Map<String, Map<String, Map<String, Object>>> typeAnnotations = new LinkedHashMap<String, Map<String, Map<String, Object>>>();
+		String packageName = "";
+		if (ast.getPackage() != null) {
+			packageName = ast.getPackage().getName().getFullyQualifiedName();
+		}
+		String prefix = packageName.length() == 0 ? "" : packageName + ".";
+		collectTypeAnnotations(unit, ast, prefix, ast.types(), typeExistence, typeAnnotations);
+
+		synchronized (this) {
+			if (!isUnchangedSince(unit, count)) {
+				// the unit was changed or removed while it was parsed
+				return;
+			}
+			dirtyUnits.remove(unit);
+			String unitPath = unit.getPath().toString();
+			removeUnit(unitPath);
+			if (typeAnnotations.isEmpty()) {
+				return;
+			}
+			unitTypes.put(unitPath, typeAnnotations.keySet());
+			for (Map.Entry<String, Map<String, Map<String, Object>>> entry : typeAnnotations.entrySet()) {
+				String typeName = entry.getKey();
+				Map<String, Map<String, Object>> annotationsOfType = entry.getValue();
+				annotationValues.put(typeName, annotationsOfType);
+				for (String annotationName : annotationsOfType.keySet()) {
+					getWritableTypeNames(annotationName).add(typeName);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects the annotations of the given type declarations and their
+	 * member types. Local and anonymous types are not visited, because the
+	 * method bodies are not parsed.
+	 */
+	private void collectTypeAnnotations(ICompilationUnit unit, CompilationUnit ast, String prefix,
+			List<?> declarations, Map<String, Boolean> typeExistence,
+			Map<String, Map<String, Map<String, Object>>> result) {
+
+		for (Object declaration : declarations) {
+			if (!(declaration instanceof AbstractTypeDeclaration)) {
+				continue;
+			}
+			AbstractTypeDeclaration type = (AbstractTypeDeclaration) declaration;
+			String typeName = prefix + type.getName().getIdentifier();
+			Map<String, Map<String, Object>> annotationsOfType = new HashMap<String, Map<String, Object>>();
+			for (Object modifier : type.modifiers()) {
+				if (!(modifier instanceof Annotation)) {
+					continue;
+				}
+				Annotation annotation = (Annotation) modifier;
+				Map<String, Object> values = Collections.unmodifiableMap(getValues(annotation));
+				String annotationName = annotation.getTypeName().getFullyQualifiedName();
+				for (String name : getAnnotationNames(unit, ast, annotationName, typeExistence)) {
+					annotationsOfType.put(name, values);
+				}
+			}
+			if (!annotationsOfType.isEmpty()) {
+				result.put(typeName, annotationsOfType);
+			}
+			collectTypeAnnotations(unit, ast, typeName + ".", type.bodyDeclarations(), typeExistence, result);
+		}
+	}
+
+	/**
+	 * Returns the values of the properties that are set explicitly on the
+	 * given annotation.
+	 */
+	private Map<String, Object> getValues(Annotation annotation) {
+		Map<String, Object> values = new HashMap<String, Object>();
+		if (annotation.isNormalAnnotation()) {
+			for (Object object : ((NormalAnnotation) annotation).values()) {
+				MemberValuePair memberValuePair = (MemberValuePair) object;
+				values.put(memberValuePair.getName().getIdentifier(), getValue(memberValuePair.getValue()));
+			}
+		} else if (annotation.isSingleMemberAnnotation()) {
+			values.put("value", getValue(((SingleMemberAnnotation) annotation).getValue()));
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the value of the given expression in the form that is used by
+	 * {@link IMemberValuePair#getValue()}, i.e., primitive values are boxed,
+	 * class literals, enum constants and nested annotations are represented by
+	 * their names (as written in the source) and arrays by an
+	 * <code>Object[]</code>. If the expression is not a literal (e.g., a
+	 * reference to a constant), <code>null</code> is returned.
+	 */
+	private Object getValue(Expression expression) {
+		if (expression instanceof StringLiteral) {
+			return ((StringLiteral) expression).getLiteralValue();
+		}
+		if (expression instanceof BooleanLiteral) {
+			return Boolean.valueOf(((BooleanLiteral) expression).booleanValue());
+		}
+		if (expression instanceof CharacterLiteral) {
+			return Character.valueOf(((CharacterLiteral) expression).charValue());
+		}
+		if (expression instanceof NumberLiteral) {
+			return getNumber(((NumberLiteral) expression).getToken());
+		}
+		if (expression instanceof PrefixExpression) {
+			PrefixExpression prefixExpression = (PrefixExpression) expression;
+			Expression operand = prefixExpression.getOperand();
+			if (prefixExpression.getOperator() == PrefixExpression.Operator.MINUS
+					&& operand instanceof NumberLiteral) {
+				return getNumber("-" + ((NumberLiteral) operand).getToken());
+			}
+			return null;
+		}
+		if (expression instanceof ParenthesizedExpression) {
+			return getValue(((ParenthesizedExpression) expression).getExpression());
+		}
+		if (expression instanceof Name) {
+			return ((Name) expression).getFullyQualifiedName();
+		}
+		if (expression instanceof TypeLiteral) {
+			return ((TypeLiteral) expression).getType().toString();
+		}
+		if (expression instanceof Annotation) {
+			return ((Annotation) expression).getTypeName().getFullyQualifiedName();
+		}
+		if (expression instanceof ArrayInitializer) {
+			List<?> expressions = ((ArrayInitializer) expression).expressions();
+			Object[] values = new Object[expressions.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = getValue((Expression) expressions.get(i));
+			}
+			return values;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the value of the given number literal or <code>null</code> if
+	 * the literal cannot be converted (e.g., binary literals).
+	 */
+	private Number getNumber(String token) {
+		String number = token.replace("_", "").toLowerCase();
+		char suffix = number.charAt(number.length() - 1);
+		boolean hexadecimal = number.startsWith("0x") || number.startsWith("-0x");
+		try {
+			if (suffix == 'l') {
+				return Long.decode(number.substring(0, number.length() - 1));
+			}
+			if (!hexadecimal && suffix == 'f') {
+				return Float.valueOf(number);
+			}
+			if (!hexadecimal && (suffix == 'd' || number.indexOf('.') >= 0 || number.indexOf('e') >= 0)) {
+				return Double.valueOf(number);
+			}
+			return Integer.decode(number);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the simple name of the given annotation and its qualified name
+	 * if it can be resolved in the context of the given compilation unit.
+	 */
+	private Set<String> getAnnotationNames(ICompilationUnit unit, CompilationUnit ast, String annotationName,
+			Map<String, Boolean> typeExistence) {
+
+		Set<String> names = new LinkedHashSet<String>(2);
+		names.add(annotationName);
+		int lastDot = annotationName.lastIndexOf('.');
+		if (lastDot >= 0) {
+			names.add(annotationName.substring(lastDot + 1));
+			return names;
+		}
+		String qualifiedName = resolveTypeName(unit, ast, annotationName, typeExistence);
+		if (qualifiedName != null) {
+			names.add(qualifiedName);
+		}
+		return names;
+	}
+
+	/**
+	 * Resolves the given simple type name using the single-type imports, the
+	 * package and the on-demand imports (including <code>java.lang</code>) of
+	 * the given compilation unit. Returns <code>null</code> if the name cannot
+	 * be resolved.
+	 */
+	private String resolveTypeName(ICompilationUnit unit, CompilationUnit ast, String simpleName,
+			Map<String, Boolean> typeExistence) {
+
+		List<String> onDemandImports = new ArrayList<String>();
+		for (Object object : ast.imports()) {
+			ImportDeclaration importDeclaration = (ImportDeclaration) object;
+			if (importDeclaration.isStatic()) {
+				continue;
+			}
+			String importName = importDeclaration.getName().getFullyQualifiedName();
+			if (importDeclaration.isOnDemand()) {
+				onDemandImports.add(importName);
+			} else if (importName.endsWith("." + simpleName)) {
+				return importName;
+			}
+		}
+
+		IJavaElement parent = unit.getParent();
+		if (parent instanceof IPackageFragment) {
+			IPackageFragment packageFragment = (IPackageFragment) parent;
+			if (packageFragment.getCompilationUnit(simpleName + ".java").exists()) {
+				String packageName = packageFragment.getElementName();
+				return packageName.length() == 0 ? simpleName : packageName + "." + simpleName;
+			}
+		}
+
+		onDemandImports.add("java.lang");
+		for (String onDemandImport : onDemandImports) {
+			String qualifiedName = onDemandImport + "." + simpleName;
+			if (typeExists(qualifiedName, typeExistence)) {
+				return qualifiedName;
+			}
+		}
+		return null;
+	}
+
+	private boolean typeExists(String qualifiedName, Map<String, Boolean> typeExistence) {
+		Boolean exists = typeExistence.get(qualifiedName);
+		if (exists == null) {
+			try {
+				exists = Boolean.valueOf(javaProject.findType(qualifiedName) != null);
+			} catch (JavaModelException e) {
+				// the name is treated as unresolvable
+				exists = Boolean.FALSE;
+			}
+			typeExistence.put(qualifiedName, exists);
+		}
+		return exists.booleanValue();
+	}
+
+	/**
+	 * Returns the set of type names for the given annotation that can be
+	 * modified. If the current set was returned by a query, it is copied first
+	 * to keep the returned set unchanged.
+	 */
+	private Set<String> getWritableTypeNames(String annotationName) {
+		Set<String> typeNames = annotatedTypes.get(annotationName);
+		if (typeNames == null) {
+			typeNames = new LinkedHashSet<String>();
+			annotatedTypes.put(annotationName, typeNames);
+		} else if (publishedAnnotationNames.remove(annotationName)) {
+			typeNames = new LinkedHashSet<String>(typeNames);
+			annotatedTypes.put(annotationName, typeNames);
+		}
+		return typeNames;
+	}
+
+	private void removeUnit(String unitPath) {
+		Set<String> typeNames = unitTypes.remove(unitPath);
+		if (typeNames == null) {
+			return;
+		}
+		for (String typeName : typeNames) {
+			Map<String, Map<String, Object>> annotationsOfType = annotationValues.remove(typeName);
+			if (annotationsOfType == null) {
+				continue;
+			}
+			for (String annotationName : annotationsOfType.keySet()) {
+				if (!annotatedTypes.containsKey(annotationName)) {
+					continue;
+				}
+				Set<String> annotatedTypeNames = getWritableTypeNames(annotationName);
+				annotatedTypeNames.remove(typeName);
+				if (annotatedTypeNames.isEmpty()) {
+					annotatedTypes.remove(annotationName);
+					publishedAnnotationNames.remove(annotationName);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the types of all compilation units contained in the given
+	 * container. If <code>recursive</code> is <code>false</code>, only direct
+	 * children are removed (e.g., to retain sub packages).
+	 */
+	private void removeAll(IJavaElement container, boolean recursive) {
+		String prefix = container.getPath().toString() + "/";
+		List<String> unitPaths = new ArrayList<String>(unitTypes.keySet());
+		for (String unitPath : unitPaths) {
+			if (isContained(unitPath, prefix, recursive)) {
+				removeUnit(unitPath);
+			}
+		}
+		// units that are removed from the dirty set while they are parsed
+		// are not stored
+		for (Iterator<ICompilationUnit> it = dirtyUnits.iterator(); it.hasNext();) {
+			if (isContained(it.next().getPath().toString(), prefix, recursive)) {
+				it.remove();
+			}
+		}
+		for (Iterator<IJavaElement> it = dirtyContainers.iterator(); it.hasNext();) {
+			IJavaElement dirtyContainer = it.next();
+			if (dirtyContainer.equals(container)
+					|| isContained(dirtyContainer.getPath().toString(), prefix, recursive)) {
+				it.remove();
+			}
+		}
+	}
+
+	private boolean isContained(String path, String containerPrefix, boolean recursive) {
+		if (!path.startsWith(containerPrefix)) {
+			return false;
+		}
+		return recursive || path.indexOf('/', containerPrefix.length()) < 0;
+	}
+
+	private void collectCompilationUnits(IJavaElement element, Set<ICompilationUnit> result)
+			throws JavaModelException {
+		if (!element.exists()) {
+			return;
+		}
+
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_PROJECT:
+			IJavaProject project = (IJavaProject) element;
+			for (IPackageFragmentRoot root : project.getPackageFragmentRoots()) {
+				if (project.equals(root.getJavaProject())) {
+					collectCompilationUnits(root, result);
+				}
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			IPackageFragmentRoot root = (IPackageFragmentRoot) element;
+			if (root.getKind() != IPackageFragmentRoot.K_SOURCE) {
+				return;
+			}
+			for (IJavaElement child : root.getChildren()) {
+				collectCompilationUnits(child, result);
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT:
+			IPackageFragment packageFragment = (IPackageFragment) element;
+			for (ICompilationUnit unit : packageFragment.getCompilationUnits()) {
+				result.add(unit);
+			}
+			break;
+		case IJavaElement.COMPILATION_UNIT:
+			result.add((ICompilationUnit) element);
+			break;
+		default:
+			break;
+		}
+	}
+}
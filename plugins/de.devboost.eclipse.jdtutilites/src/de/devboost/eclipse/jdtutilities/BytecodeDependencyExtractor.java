@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * The {@link BytecodeDependencyExtractor} determines the dependencies of Java
+ * resources by reading the compiled class files instead of using the JDT
+ * search engine. For source files, the class files are looked up in the output
+ * location of the source folder. Class files (e.g., in output or class
+ * folders) are read directly.
+ *
+ * The referenced classes are mapped to the resources that contain them in the
+ * same way the search engine does it. Thus, the extractor produces the same
+ * kind of paths as {@link ClassDependencyUtility#findReferencesFrom(String)}.
+ * If {@link #setIncludeArchives(boolean)} is enabled, classes contained in JAR
+ * files on the classpath are mapped to the path of the JAR file.
+ *
+ * Note: The class files must be up to date, i.e., the workspace must have been
+ * built. A {@link ClassDependencyIndex} that uses this extractor listens to
+ * changes of class files and re-extracts the dependencies of the affected
+ * resources (see {@link #getDependentPaths(IFile)}) after each build.
+ */
+public abstract class BytecodeDependencyExtractor implements IDependencyExtractor {
+
+	private static final String CLASS_FILE_EXTENSION = "class";
+	private static final String JAVA_FILE_EXTENSION = "java";
+
+	private final JDTUtility jdtUtility = new JDTUtility() {
+
+		@Override
+		protected void logWarning(String message, Exception e) {
+			BytecodeDependencyExtractor.this.logWarning(message, e);
+		}
+	};
+
+	/**
+	 * The entries of an archive at the time it was last modified.
+	 */
+	private static class ArchiveEntries {
+
+		private final long lastModified;
+		private final Set<String> names;
+
+		private ArchiveEntries(long lastModified, Set<String> names) {
+			this.lastModified = lastModified;
+			this.names = names;
+		}
+	}
+
+	private boolean includeArchives;
+
+	private final Map<File, ArchiveEntries> archiveEntries = new HashMap<File, ArchiveEntries>();
+
+	/**
+	 * Returns <code>true</code> if classes in JAR files are mapped to the path
+	 * of the JAR file.
+	 */
+	public boolean isIncludeArchives() {
+		return includeArchives;
+	}
+
+	/**
+	 * Determines whether classes in JAR files are mapped to the path of the JAR
+	 * file. By default, JAR files that are not located in the workspace are
+	 * ignored (like the search engine does).
+	 */
+	public void setIncludeArchives(boolean includeArchives) {
+		this.includeArchives = includeArchives;
+	}
+
+	@Override
+	public Set<String> findReferencesFrom(String path) throws CoreException {
+		Set<String> result = new LinkedHashSet<String>();
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		IFile file = root.getFile(new Path(path));
+		IJavaProject javaProject = jdtUtility.getJavaProject(file);
+		if (javaProject == null) {
+			return result;
+		}
+
+		List<File> classFiles = getClassFiles(file, path);
+		Set<String> referencedClassNames = new LinkedHashSet<String>();
+		for (File classFile : classFiles) {
+			try {
+				ClassFileReader reader = ClassFileReader.read(classFile);
+				referencedClassNames.addAll(reader.getReferencedClassNames());
+			} catch (IOException e) {
+				logWarning("Can't read class file " + classFile, e);
+			}
+		}
+
+		List<IPackageFragmentRoot> roots = ProjectLayoutCache.getInstance().getLayout(javaProject)
+				.getClasspathRoots();
+		Map<String, String> topLevelNameToPath = new HashMap<String, String>();
+		for (String referencedClassName : referencedClassNames) {
+			String topLevelName = getTopLevelName(referencedClassName);
+			if (topLevelNameToPath.containsKey(topLevelName)) {
+				continue;
+			}
+			String referencedPath = getPath(roots, topLevelName);
+			topLevelNameToPath.put(topLevelName, referencedPath);
+			if (referencedPath != null) {
+				result.add(referencedPath);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the class files that were compiled from the given source file or
+	 * the class file itself.
+	 */
+	private List<File> getClassFiles(IFile file, String path) throws JavaModelException {
+		List<File> result = new ArrayList<File>();
+		String extension = file.getFileExtension();
+		if (CLASS_FILE_EXTENSION.equals(extension)) {
+			IPath location = file.getLocation();
+			if (location != null) {
+				result.add(location.toFile());
+			}
+			return result;
+		}
+		if (!JAVA_FILE_EXTENSION.equals(extension)) {
+			return result;
+		}
+
+		IType[] types = jdtUtility.getJavaTypes(path);
+		if (types == null) {
+			return result;
+		}
+		// the types are grouped by their output directory, which is listed
+		// only once
+		Map<File, Set<String>> directoryToTypeNames = new LinkedHashMap<File, Set<String>>();
+		for (IType type : types) {
+			File packageDirectory = getOutputDirectory(type);
+			if (packageDirectory == null) {
+				continue;
+			}
+			Set<String> typeNames = directoryToTypeNames.get(packageDirectory);
+			if (typeNames == null) {
+				typeNames = new HashSet<String>();
+				directoryToTypeNames.put(packageDirectory, typeNames);
+			}
+			typeNames.add(type.getElementName());
+		}
+
+		String classFileSuffix = "." + CLASS_FILE_EXTENSION;
+		for (Map.Entry<File, Set<String>> entry : directoryToTypeNames.entrySet()) {
+			File[] classFiles = entry.getKey().listFiles();
+			if (classFiles == null) {
+				continue;
+			}
+			Set<String> typeNames = entry.getValue();
+			for (File classFile : classFiles) {
+				String name = classFile.getName();
+				if (!name.endsWith(classFileSuffix)) {
+					continue;
+				}
+				// nested, local and anonymous classes belong to the
+				// top-level type that precedes the first dollar sign
+				int end = name.indexOf('$');
+				if (end < 0) {
+					end = name.length() - classFileSuffix.length();
+				}
+				if (typeNames.contains(name.substring(0, end))) {
+					result.add(classFile);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the paths of the resources whose dependencies are read from the
+	 * given class file, i.e., the class file itself and the source files of
+	 * the project that are compiled to the output location which contains the
+	 * class file. The source files are derived from the name of the class
+	 * file (i.e., secondary types are not covered) and need not exist.
+	 */
+	public Set<String> getDependentPaths(IFile classFile) throws JavaModelException {
+		Set<String> result = new LinkedHashSet<String>();
+		IPath classFilePath = classFile.getFullPath();
+		result.add(classFilePath.toString());
+		IJavaProject javaProject = jdtUtility.getJavaProject(classFile);
+		if (javaProject == null) {
+			return result;
+		}
+
+		String name = classFile.getName();
+		int end = name.indexOf('$');
+		if (end < 0) {
+			end = name.length() - CLASS_FILE_EXTENSION.length() - 1;
+		}
+		String sourceFileName = name.substring(0, end) + "." + JAVA_FILE_EXTENSION;
+		for (IPackageFragmentRoot root : javaProject.getPackageFragmentRoots()) {
+			if (root.getKind() != IPackageFragmentRoot.K_SOURCE || !javaProject.equals(root.getJavaProject())) {
+				continue;
+			}
+			IPath outputLocation = getOutputLocation(root);
+			if (outputLocation == null || !outputLocation.isPrefixOf(classFilePath)) {
+				continue;
+			}
+			IPath packagePath = classFilePath.removeFirstSegments(outputLocation.segmentCount())
+					.removeLastSegments(1);
+			result.add(root.getPath().append(packagePath).append(sourceFileName).toString());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the output location of the given source folder.
+	 */
+	private IPath getOutputLocation(IPackageFragmentRoot packageFragmentRoot) throws JavaModelException {
+		IClasspathEntry classpathEntry = packageFragmentRoot.getRawClasspathEntry();
+		if (classpathEntry != null && classpathEntry.getOutputLocation() != null) {
+			return classpathEntry.getOutputLocation();
+		}
+		return packageFragmentRoot.getJavaProject().getOutputLocation();
+	}
+
+	/**
+	 * Returns the directory in the output location that contains the class
+	 * files for the package of the given type.
+	 */
+	private File getOutputDirectory(IType type) throws JavaModelException {
+		IPackageFragmentRoot packageFragmentRoot = (IPackageFragmentRoot) type
+				.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+		if (packageFragmentRoot == null) {
+			return null;
+		}
+
+		IPath outputLocation = getOutputLocation(packageFragmentRoot);
+		if (outputLocation == null) {
+			return null;
+		}
+
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		IResource outputFolder = root.findMember(outputLocation);
+		if (outputFolder == null) {
+			return null;
+		}
+		IPath outputFolderLocation = outputFolder.getLocation();
+		if (outputFolderLocation == null) {
+			return null;
+		}
+		String packageName = type.getPackageFragment().getElementName();
+		return new File(outputFolderLocation.toFile(), packageName.replace('.', File.separatorChar));
+	}
+
+	/**
+	 * Returns the path of the resource that contains the class with the given
+	 * (fully qualified) name or <code>null</code> if the class cannot be found
+	 * in the workspace. The class is looked up in the package fragment roots
+	 * of the project in classpath order by checking the resource tree and the
+	 * entries of archives, i.e., without accessing the Java model. Secondary
+	 * types (i.e., types that are declared in a source file with a different
+	 * name) are not found.
+	 */
+	private String getPath(List<IPackageFragmentRoot> roots, String qualifiedName) throws JavaModelException {
+		if (qualifiedName.startsWith("java.")) {
+			// skip classes of the JDK right away
+			return null;
+		}
+		String relativePath = qualifiedName.replace('.', '/');
+		String sourcePath = relativePath + "." + JAVA_FILE_EXTENSION;
+		String classFilePath = relativePath + "." + CLASS_FILE_EXTENSION;
+		for (IPackageFragmentRoot root : roots) {
+			IResource rootResource = root.getResource();
+			if (root.isArchive()) {
+				// archives in the workspace are always reported (like the
+				// search engine does it), external ones only if requested
+				if (rootResource == null && !includeArchives) {
+					continue;
+				}
+				IPath location = rootResource == null ? root.getPath() : rootResource.getLocation();
+				if (location != null && getArchiveEntries(location.toFile()).contains(classFilePath)) {
+					return root.getPath().toString();
+				}
+				continue;
+			}
+			if (!(rootResource instanceof IContainer)) {
+				continue;
+			}
+			String memberPath = root.getKind() == IPackageFragmentRoot.K_SOURCE ? sourcePath : classFilePath;
+			IResource member = ((IContainer) rootResource).findMember(memberPath);
+			if (member != null) {
+				return member.getFullPath().toString();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the names of all entries of the given archive. The entries are
+	 * cached until the archive is modified.
+	 */
+	private Set<String> getArchiveEntries(File archive) {
+		long lastModified = archive.lastModified();
+		synchronized (archiveEntries) {
+			ArchiveEntries entries = archiveEntries.get(archive);
+			if (entries != null && entries.lastModified == lastModified) {
+				return entries.names;
+			}
+		}
+
+		Set<String> names = new HashSet<String>();
+		try {
+			ZipFile zipFile = new ZipFile(archive);
+			try {
+				Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+				while (zipEntries.hasMoreElements()) {
+					names.add(zipEntries.nextElement().getName());
+				}
+			} finally {
+				zipFile.close();
+			}
+		} catch (IOException e) {
+			logWarning("Can't read archive " + archive, e);
+		}
+		synchronized (archiveEntries) {
+			archiveEntries.put(archive, new ArchiveEntries(lastModified, names));
+		}
+		return names;
+	}
+
+	/**
+	 * Converts the given internal class name to the qualified name of the
+	 * top-level class that contains it (e.g., <code>a/b/C$D</code> is converted
+	 * to <code>a.b.C</code>). All classes that are contained in a top-level
+	 * class share its resource.
+	 */
+	private String getTopLevelName(String internalName) {
+		int simpleNameStart = internalName.lastIndexOf('/') + 1;
+		int nestedClassStart = internalName.indexOf('$', simpleNameStart);
+		String topLevelName = internalName;
+		if (nestedClassStart > simpleNameStart) {
+			topLevelName = internalName.substring(0, nestedClassStart);
+		}
+		return topLevelName.replace('/', '.');
+	}
+
+	protected abstract void logWarning(String message, Exception e);
+}
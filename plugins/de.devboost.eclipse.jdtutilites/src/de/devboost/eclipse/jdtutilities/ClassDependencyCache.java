@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * The {@link ClassDependencyCache} memoizes the results of
+ * {@link ClassDependencyUtility#findReferencesFrom(String)}. The size of the
+ * cache is bounded by the total number of paths that are stored in the cached
+ * results. If this bound is exceeded, the least recently used results are
+ * evicted.
+ *
+ * The cache listens to Java element deltas. If a compilation unit is changed
+ * or removed, the cached result for the unit and the cached results of all
+ * units that reference it are invalidated. Changes that may affect arbitrary
+ * units (e.g., added compilation units or classpath changes) invalidate the
+ * whole cache.
+ *
+ * The cache starts listening to deltas when a result is computed for it the
+ * first time. From then on, the cache is referenced by JDT until
+ * {@link #dispose()} is called. Thus, each cache that was used must be
+ * disposed, otherwise it is never garbage collected (including all its
+ * entries).
+ */
+public class ClassDependencyCache implements IElementChangedListener {
+
+	private static final int CONTAINER_CHANGED = IJavaElementDelta.F_OPENED
+			| IJavaElementDelta.F_CLOSED
+			| IJavaElementDelta.F_ADDED_TO_CLASSPATH
+			| IJavaElementDelta.F_REMOVED_FROM_CLASSPATH
+			| IJavaElementDelta.F_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED;
+
+	private static final int UNIT_CHANGED = IJavaElementDelta.F_CONTENT
+			| IJavaElementDelta.F_PRIMARY_RESOURCE;
+
+	private static class Entry {
+
+		private final String[] references;
+
+		private Entry(String[] references) {
+			this.references = references;
+		}
+
+		private int getWeight() {
+			return references.length + 1;
+		}
+	}
+
+	private final long maximumWeight;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	/**
+	 * Maps the paths that occur in cached results to the paths of the entries
+	 * that contain them (i.e., the dependents of the path).
+	 */
+	private final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+
+	private long weight;
+	private long modificationStamp;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private long invalidationCount;
+
+	private boolean listening;
+	private boolean disposed;
+
+	/**
+	 * Creates a cache that holds at most the given number of paths.
+	 */
+	public ClassDependencyCache(long maximumWeight) {
+		super();
+		if (maximumWeight < 1) {
+			throw new IllegalArgumentException("Maximum weight must be at least 1.");
+		}
+		this.maximumWeight = maximumWeight;
+	}
+
+	/**
+	 * Stops listening to Java element deltas and clears the cache. A disposed
+	 * cache does not store results anymore.
+	 */
+	public synchronized void dispose() {
+		if (listening) {
+			JavaCore.removeElementChangedListener(this);
+			listening = false;
+		}
+		disposed = true;
+		invalidateAll();
+	}
+
+	/**
+	 * Returns the cached references of the given path or <code>null</code> if
+	 * no result is cached.
+	 */
+	synchronized Set<String> get(String path) {
+		Entry entry = entries.get(path);
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return new LinkedHashSet<String>(Arrays.asList(entry.references));
+	}
+
+	/**
+	 * Stores the references of the given path unless the cache was modified
+	 * since the given stamp was obtained using {@link #getModificationStamp()}.
+	 * This ensures that results which were computed while a change happened
+	 * are not cached.
+	 */
+	synchronized void put(String path, Set<String> references, long stamp) {
+		if (!listening || stamp != modificationStamp) {
+			return;
+		}
+		remove(path);
+
+		Entry entry = new Entry(references.toArray(new String[references.size()]));
+		if (entry.getWeight() > maximumWeight) {
+			return;
+		}
+		entries.put(path, entry);
+		weight += entry.getWeight();
+		for (String reference : entry.references) {
+			Set<String> dependentsOfReference = dependents.get(reference);
+			if (dependentsOfReference == null) {
+				dependentsOfReference = new HashSet<String>();
+				dependents.put(reference, dependentsOfReference);
+			}
+			dependentsOfReference.add(path);
+		}
+		evict();
+	}
+
+	/**
+	 * Returns the current modification stamp. The stamp must be obtained
+	 * before a result is computed. The cache starts listening to Java element
+	 * deltas when this method is called for the first time, so that all
+	 * changes that happen while the result is computed are noticed.
+	 */
+	synchronized long getModificationStamp() {
+		if (!listening && !disposed) {
+			JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+			listening = true;
+		}
+		return modificationStamp;
+	}
+
+	/**
+	 * Removes the cached result for the given path and the results of all
+	 * paths that depend on it.
+	 */
+	public synchronized void invalidate(String path) {
+		modificationStamp++;
+		boolean invalidated = remove(path);
+		Set<String> dependentsOfPath = dependents.get(path);
+		if (dependentsOfPath != null) {
+			for (String dependent : dependentsOfPath.toArray(new String[dependentsOfPath.size()])) {
+				invalidated |= remove(dependent);
+			}
+		}
+		if (invalidated) {
+			invalidationCount++;
+		}
+	}
+
+	/**
+	 * Removes all cached results.
+	 */
+	public synchronized void invalidateAll() {
+		modificationStamp++;
+		if (!entries.isEmpty()) {
+			invalidationCount++;
+		}
+		entries.clear();
+		dependents.clear();
+		weight = 0;
+	}
+
+	private boolean remove(String path) {
+		Entry entry = entries.remove(path);
+		if (entry == null) {
+			return false;
+		}
+		weight -= entry.getWeight();
+		for (String reference : entry.references) {
+			Set<String> dependentsOfReference = dependents.get(reference);
+			if (dependentsOfReference != null) {
+				dependentsOfReference.remove(path);
+				if (dependentsOfReference.isEmpty()) {
+					dependents.remove(reference);
+				}
+			}
+		}
+		return true;
+	}
+
+	private void evict() {
+		while (weight > maximumWeight && !entries.isEmpty()) {
+			// the first entry is the least recently used one
+			String eldestPath = entries.keySet().iterator().next();
+			remove(eldestPath);
+			evictionCount++;
+		}
+	}
+
+	@Override
+	public void elementChanged(ElementChangedEvent event) {
+		IJavaElementDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		synchronized (this) {
+			processDelta(delta);
+		}
+	}
+
+	private void processDelta(IJavaElementDelta delta) {
+		IJavaElement element = delta.getElement();
+		int kind = delta.getKind();
+		int flags = delta.getFlags();
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_MODEL:
+			break;
+		case IJavaElement.JAVA_PROJECT:
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+		case IJavaElement.PACKAGE_FRAGMENT:
+			if (kind != IJavaElementDelta.CHANGED || (flags & CONTAINER_CHANGED) != 0) {
+				// classpath changes, added or removed packages and the like
+				// can change the resolution of arbitrary types
+				invalidateAll();
+				return;
+			}
+			break;
+		case IJavaElement.COMPILATION_UNIT:
+			ICompilationUnit unit = (ICompilationUnit) element;
+			if (unit.getOwner() != null) {
+				// ignore non-primary working copies
+				return;
+			}
+			if (kind == IJavaElementDelta.ADDED) {
+				// a new type may be found by units that did not resolve it
+				// before
+				invalidateAll();
+			} else if (kind == IJavaElementDelta.REMOVED || (flags & UNIT_CHANGED) != 0) {
+				invalidate(unit.getPath().toString());
+			}
+			return;
+		default:
+			return;
+		}
+
+		for (IJavaElementDelta child : delta.getAffectedChildren()) {
+			processDelta(child);
+		}
+	}
+
+	/**
+	 * Returns the number of queries that were answered by the cache.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of queries that were not answered by the cache.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of results that were removed, because the cache
+	 * exceeded its maximum weight.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Returns the number of invalidations (caused by changes) that removed at
+	 * least one result.
+	 */
+	public synchronized long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+	/**
+	 * Returns the number of cached results.
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the total number of paths stored in the cache.
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+}
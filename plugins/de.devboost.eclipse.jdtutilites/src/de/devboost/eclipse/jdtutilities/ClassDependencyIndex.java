@@ -0,0 +1,638 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaModel;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * The {@link ClassDependencyIndex} is an in-memory graph of the dependencies
+ * between the Java resources in the workspace. Each resource path is mapped to
+ * an integer ID by a {@link PathDictionary} and the outgoing and incoming
+ * edges of each resource are stored as arrays of these IDs. By default, each
+ * index uses its own synchronized dictionary, which is released together with
+ * the index.
+ *
+ * The index is built once by calling {@link #build(IProgressMonitor)}. Then,
+ * it listens to Java element deltas and recomputes the outgoing edges of all
+ * changed compilation units lazily, i.e., right before the next query is
+ * answered. If the extractor reads class files, the index also listens to
+ * resource changes of class files, because these are written by the builder
+ * after the Java element deltas were reported. Call {@link #dispose()} to
+ * stop listening to changes.
+ *
+ * Only one thread refreshes the index at a time. Other threads that query the
+ * index wait until the running refresh is finished. A path is considered
+ * dirty until its dependencies were stored, so a failed extraction is
+ * repeated on the next query. Results for paths that were changed or removed
+ * while they were extracted are dropped.
+ */
+public class ClassDependencyIndex implements IElementChangedListener {
+
+	private static final int[] NO_EDGES = new int[0];
+
+	private static final String CLASS_FILE_EXTENSION = "class";
+
+	private static final int CONTAINER_CHANGED = IJavaElementDelta.F_OPENED
+			| IJavaElementDelta.F_ADDED_TO_CLASSPATH
+			| IJavaElementDelta.F_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED;
+
+	private static final int CONTAINER_REMOVED = IJavaElementDelta.F_CLOSED
+			| IJavaElementDelta.F_REMOVED_FROM_CLASSPATH;
+
+	private static final int UNIT_CHANGED = IJavaElementDelta.F_CONTENT
+			| IJavaElementDelta.F_PRIMARY_RESOURCE;
+
+	private final IDependencyExtractor extractor;
+
+	private final PathDictionary dictionary;
+
+	/*
+	 * The following arrays are indexed by the IDs that are assigned to the
+	 * paths by the dictionary.
+	 */
+	private int[][] outgoing = new int[256][];
+	private int[] outgoingCount = new int[256];
+	private int[][] incoming = new int[256][];
+	private int[] incomingCount = new int[256];
+
+	/**
+	 * Contains a flag for each resource that tells whether the outgoing edges
+	 * of the resource were determined by the extractor.
+	 */
+	private boolean[] extracted = new boolean[256];
+
+	/**
+	 * Contains a counter for each resource that is incremented whenever the
+	 * resource is changed or removed. The result of an extraction is only
+	 * stored if the counter did not change while the extractor was running.
+	 */
+	private int[] generations = new int[256];
+
+	/**
+	 * Is held while the index is refreshed.
+	 */
+	private final Object refreshLock = new Object();
+
+	/**
+	 * The paths of all compilation units whose dependencies must be
+	 * (re-)extracted.
+	 */
+	private final Set<String> dirtyPaths = new LinkedHashSet<String>();
+
+	/**
+	 * All projects, package fragment roots and packages that were added
+	 * since the last query. The compilation units that are contained in these
+	 * elements are determined when the index is refreshed.
+	 */
+	private final List<IJavaElement> dirtyContainers = new ArrayList<IJavaElement>();
+
+	/**
+	 * Marks the resources whose dependencies are read from class files dirty
+	 * when the class files are changed by a build. It is only registered if
+	 * the extractor is a {@link BytecodeDependencyExtractor}, because the
+	 * Java element delta of a compilation unit is reported before the new
+	 * class files are written.
+	 */
+	private final IResourceChangeListener classFileListener = new IResourceChangeListener() {
+
+		@Override
+		public void resourceChanged(IResourceChangeEvent event) {
+			IResourceDelta delta = event.getDelta();
+			if (delta == null) {
+				return;
+			}
+			List<IFile> classFiles = new ArrayList<IFile>();
+			collectClassFiles(delta, classFiles);
+			if (!classFiles.isEmpty()) {
+				classFilesChanged(classFiles);
+			}
+		}
+	};
+
+	private boolean warm;
+	private boolean listening;
+
+	public ClassDependencyIndex(IDependencyExtractor extractor) {
+		this(extractor, PathDictionary.synchronizedDictionary());
+	}
+
+	/**
+	 * Creates an index that stores its paths in the given dictionary. Since
+	 * the results of the index refer to the dictionary and may be used by
+	 * other threads, the dictionary must be thread-safe (see
+	 * {@link PathDictionary#synchronizedDictionary()}).
+	 */
+	public ClassDependencyIndex(IDependencyExtractor extractor, PathDictionary dictionary) {
+		super();
+		this.extractor = extractor;
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Extracts the dependencies of all compilation units in the workspace and
+	 * starts listening to Java element deltas.
+	 */
+	public void build(IProgressMonitor monitor) throws CoreException {
+		synchronized (this) {
+			if (!listening) {
+				JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+				if (extractor instanceof BytecodeDependencyExtractor) {
+					ResourcesPlugin.getWorkspace().addResourceChangeListener(classFileListener,
+							IResourceChangeEvent.POST_CHANGE);
+				}
+				listening = true;
+			}
+		}
+
+		IJavaModel javaModel = JavaCore.create(ResourcesPlugin.getWorkspace().getRoot());
+		Set<String> unitPaths = new LinkedHashSet<String>();
+		for (IJavaProject javaProject : javaModel.getJavaProjects()) {
+			collectCompilationUnits(javaProject, unitPaths);
+		}
+
+		synchronized (this) {
+			for (String unitPath : unitPaths) {
+				markDirty(unitPath);
+			}
+		}
+		refresh(SubMonitor.convert(monitor, "Building class dependency index", 1));
+
+		synchronized (this) {
+			warm = true;
+		}
+	}
+
+	/**
+	 * Stops listening to Java element deltas. After calling this method the
+	 * index is cold and does not answer queries anymore.
+	 */
+	public synchronized void dispose() {
+		if (listening) {
+			JavaCore.removeElementChangedListener(this);
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(classFileListener);
+			listening = false;
+		}
+		warm = false;
+	}
+
+	/**
+	 * Returns the dictionary that maps the paths of this index to IDs.
+	 */
+	public PathDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Returns <code>true</code> if the index was built and is kept up to date.
+	 */
+	public synchronized boolean isWarm() {
+		return warm;
+	}
+
+	/**
+	 * Returns the paths of all resources that are referenced by the resource
+	 * at the given path. If the index is cold or if the dependencies of the
+	 * resource are not known, <code>null</code> is returned. The result is a
+	 * {@link PathSet} that uses the dictionary of this index.
+	 */
+	public Set<String> getReferencesFrom(String path) throws CoreException {
+		if (!isWarm()) {
+			return null;
+		}
+		refresh();
+
+		synchronized (this) {
+			int id = dictionary.lookup(path);
+			if (id < 0 || id >= extracted.length || !extracted[id]) {
+				return null;
+			}
+			return toPathSet(outgoing[id], outgoingCount[id]);
+		}
+	}
+
+	/**
+	 * Returns the paths of all resources that reference the resource at the
+	 * given path. If the index is cold, <code>null</code> is returned. The
+	 * result is a {@link PathSet} that uses the dictionary of this index.
+	 */
+	public Set<String> getReferencesTo(String path) throws CoreException {
+		if (!isWarm()) {
+			return null;
+		}
+		refresh();
+
+		synchronized (this) {
+			int id = dictionary.lookup(path);
+			if (id < 0 || id >= incoming.length) {
+				return new PathSet(dictionary);
+			}
+			return toPathSet(incoming[id], incomingCount[id]);
+		}
+	}
+
+	@Override
+	public void elementChanged(ElementChangedEvent event) {
+		IJavaElementDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		synchronized (this) {
+			processDelta(delta);
+		}
+	}
+
+	private void processDelta(IJavaElementDelta delta) {
+		IJavaElement element = delta.getElement();
+		int kind = delta.getKind();
+		int flags = delta.getFlags();
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_PROJECT:
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+		case IJavaElement.PACKAGE_FRAGMENT:
+			if (kind == IJavaElementDelta.REMOVED || (flags & CONTAINER_REMOVED) != 0) {
+				boolean recursive = element.getElementType() != IJavaElement.PACKAGE_FRAGMENT;
+				removeAll(element, recursive);
+				return;
+			}
+			if (kind == IJavaElementDelta.ADDED || (flags & CONTAINER_CHANGED) != 0) {
+				dirtyContainers.add(element);
+				return;
+			}
+			break;
+		case IJavaElement.COMPILATION_UNIT:
+			ICompilationUnit unit = (ICompilationUnit) element;
+			if (unit.getOwner() != null) {
+				// ignore non-primary working copies
+				return;
+			}
+			String unitPath = unit.getPath().toString();
+			if (kind == IJavaElementDelta.REMOVED) {
+				remove(unitPath);
+			} else if (kind == IJavaElementDelta.ADDED || (flags & UNIT_CHANGED) != 0) {
+				markDirty(unitPath);
+			}
+			return;
+		default:
+			break;
+		}
+
+		for (IJavaElementDelta child : delta.getAffectedChildren()) {
+			processDelta(child);
+		}
+	}
+
+	private void collectClassFiles(IResourceDelta delta, List<IFile> result) {
+		IResource resource = delta.getResource();
+		if (resource.getType() == IResource.FILE) {
+			if (CLASS_FILE_EXTENSION.equals(resource.getFileExtension())) {
+				result.add((IFile) resource);
+			}
+			return;
+		}
+		for (IResourceDelta child : delta.getAffectedChildren()) {
+			collectClassFiles(child, result);
+		}
+	}
+
+	/**
+	 * Marks all known resources whose dependencies are read from the given
+	 * class files dirty.
+	 */
+	private void classFilesChanged(List<IFile> classFiles) {
+		BytecodeDependencyExtractor bytecodeExtractor = (BytecodeDependencyExtractor) extractor;
+		Set<String> dependentPaths = new LinkedHashSet<String>();
+		for (IFile classFile : classFiles) {
+			try {
+				dependentPaths.addAll(bytecodeExtractor.getDependentPaths(classFile));
+			} catch (CoreException e) {
+				// the project is not accessible anymore, which is handled
+				// by the Java element deltas
+			}
+		}
+		synchronized (this) {
+			for (String path : dependentPaths) {
+				int id = dictionary.lookup(path);
+				if (id >= 0 && id < extracted.length && (extracted[id] || dirtyPaths.contains(path))) {
+					markDirty(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Extracts the dependencies of all compilation units that were changed
+	 * since the last call to this method.
+	 */
+	private void refresh() throws CoreException {
+		synchronized (this) {
+			if (dirtyPaths.isEmpty() && dirtyContainers.isEmpty()) {
+				return;
+			}
+		}
+		refresh(null);
+	}
+
+	private void refresh(IProgressMonitor monitor) throws CoreException {
+		synchronized (refreshLock) {
+			collectDirtyContainers();
+
+			List<String> pathsToExtract;
+			synchronized (this) {
+				pathsToExtract = new ArrayList<String>(dirtyPaths);
+			}
+			SubMonitor progress = SubMonitor.convert(monitor, pathsToExtract.size());
+			for (String path : pathsToExtract) {
+				if (progress.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				extract(path);
+				progress.worked(1);
+			}
+		}
+	}
+
+	/**
+	 * Marks the compilation units in all added containers as dirty. A
+	 * container is only removed from the list of dirty containers after its
+	 * units were collected.
+	 */
+	private void collectDirtyContainers() throws CoreException {
+		List<IJavaElement> containers;
+		synchronized (this) {
+			if (dirtyContainers.isEmpty()) {
+				return;
+			}
+			containers = new ArrayList<IJavaElement>(dirtyContainers);
+		}
+
+		Map<IJavaElement, Set<String>> containerUnits = new LinkedHashMap<IJavaElement, Set<String>>();
+		for (IJavaElement container : containers) {
+			Set<String> unitPaths = new LinkedHashSet<String>();
+			collectCompilationUnits(container, unitPaths);
+			containerUnits.put(container, unitPaths);
+		}
+
+		synchronized (this) {
+			for (Map.Entry<IJavaElement, Set<String>> entry : containerUnits.entrySet()) {
+				// the container was removed in the meantime
+				if (!dirtyContainers.remove(entry.getKey())) {
+					continue;
+				}
+				for (String unitPath : entry.getValue()) {
+					markDirty(unitPath);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Extracts the dependencies of the given path if it is still dirty. The
+	 * path stays dirty if the extractor fails.
+	 */
+	private void extract(String path) throws CoreException {
+		int id;
+		int generation;
+		synchronized (this) {
+			if (!dirtyPaths.contains(path)) {
+				return;
+			}
+			id = getID(path);
+			generation = generations[id];
+		}
+
+		// The extractor is called without holding the lock, because searching
+		// may take a while.
+		Set<String> references = extractor.findReferencesFrom(path);
+		synchronized (this) {
+			if (generations[id] != generation) {
+				// the path was changed or removed in the meantime
+				return;
+			}
+			setOutgoing(id, references);
+			dirtyPaths.remove(path);
+		}
+	}
+
+	private void markDirty(String path) {
+		generations[getID(path)]++;
+		dirtyPaths.add(path);
+	}
+
+	private void collectCompilationUnits(IJavaElement element, Set<String> result) throws CoreException {
+		if (!element.exists()) {
+			return;
+		}
+
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_PROJECT:
+			IJavaProject javaProject = (IJavaProject) element;
+			for (IPackageFragmentRoot root : javaProject.getPackageFragmentRoots()) {
+				if (javaProject.equals(root.getJavaProject())) {
+					collectCompilationUnits(root, result);
+				}
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			IPackageFragmentRoot root = (IPackageFragmentRoot) element;
+			if (root.getKind() != IPackageFragmentRoot.K_SOURCE) {
+				return;
+			}
+			for (IJavaElement child : root.getChildren()) {
+				collectCompilationUnits(child, result);
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT:
+			IPackageFragment packageFragment = (IPackageFragment) element;
+			for (ICompilationUnit unit : packageFragment.getCompilationUnits()) {
+				result.add(unit.getPath().toString());
+			}
+			break;
+		case IJavaElement.COMPILATION_UNIT:
+			result.add(element.getPath().toString());
+			break;
+		default:
+			break;
+		}
+	}
+
+	private int getID(String path) {
+		int id = dictionary.getID(path);
+		ensureCapacity(id + 1);
+		return id;
+	}
+
+	private void ensureCapacity(int capacity) {
+		int length = outgoing.length;
+		if (capacity <= length) {
+			return;
+		}
+		
+		int newLength = Math.max(capacity, length * 2);
+		int[][] newOutgoing = new int[newLength][];
+		System.arraycopy(outgoing, 0, newOutgoing, 0, length);
+		outgoing = newOutgoing;
+		int[][] newIncoming = new int[newLength][];
+		System.arraycopy(incoming, 0, newIncoming, 0, length);
+		incoming = newIncoming;
+		int[] newOutgoingCount = new int[newLength];
+		System.arraycopy(outgoingCount, 0, newOutgoingCount, 0, length);
+		outgoingCount = newOutgoingCount;
+		int[] newIncomingCount = new int[newLength];
+		System.arraycopy(incomingCount, 0, newIncomingCount, 0, length);
+		incomingCount = newIncomingCount;
+		boolean[] newExtracted = new boolean[newLength];
+		System.arraycopy(extracted, 0, newExtracted, 0, length);
+		extracted = newExtracted;
+		int[] newGenerations = new int[newLength];
+		System.arraycopy(generations, 0, newGenerations, 0, length);
+		generations = newGenerations;
+	}
+
+	private void setOutgoing(int source, Set<String> targetPaths) {
+		clearOutgoing(source);
+
+		int[] edges = new int[targetPaths.size()];
+		int count = 0;
+		for (String targetPath : targetPaths) {
+			int target = getID(targetPath);
+			edges[count++] = target;
+			incoming[target] = append(incoming[target], incomingCount[target], source);
+			incomingCount[target]++;
+		}
+		outgoing[source] = edges;
+		outgoingCount[source] = count;
+		extracted[source] = true;
+	}
+
+	private void clearOutgoing(int source) {
+		if (!extracted[source]) {
+			return;
+		}
+		int[] edges = outgoing[source];
+		for (int i = 0; i < outgoingCount[source]; i++) {
+			int target = edges[i];
+			incomingCount[target] = removeEdge(incoming[target], incomingCount[target], source);
+		}
+		outgoing[source] = NO_EDGES;
+		outgoingCount[source] = 0;
+		extracted[source] = false;
+	}
+
+	private void remove(String path) {
+		dirtyPaths.remove(path);
+		int id = dictionary.lookup(path);
+		if (id >= 0 && id < extracted.length) {
+			generations[id]++;
+			clearOutgoing(id);
+		}
+	}
+
+	/**
+	 * Removes the outgoing edges of all resources contained in the given
+	 * container. If <code>recursive</code> is <code>false</code>, only direct
+	 * children are removed (e.g., to retain sub packages).
+	 */
+	private void removeAll(IJavaElement container, boolean recursive) {
+		String prefix = container.getPath().toString() + "/";
+		for (int id = 0; id < extracted.length; id++) {
+			if (extracted[id] && isContained(dictionary.getPath(id), prefix, recursive)) {
+				generations[id]++;
+				clearOutgoing(id);
+			}
+		}
+		for (Iterator<String> it = dirtyPaths.iterator(); it.hasNext();) {
+			String path = it.next();
+			if (isContained(path, prefix, recursive)) {
+				generations[dictionary.lookup(path)]++;
+				it.remove();
+			}
+		}
+		for (Iterator<IJavaElement> it = dirtyContainers.iterator(); it.hasNext();) {
+			IJavaElement dirtyContainer = it.next();
+			if (dirtyContainer.equals(container)
+					|| isContained(dirtyContainer.getPath().toString(), prefix, recursive)) {
+				it.remove();
+			}
+		}
+	}
+
+	private boolean isContained(String path, String containerPrefix, boolean recursive) {
+		if (!path.startsWith(containerPrefix)) {
+			return false;
+		}
+		return recursive || path.indexOf('/', containerPrefix.length()) < 0;
+	}
+
+	private PathSet toPathSet(int[] edges, int count) {
+		int[] ids = new int[count];
+		if (count > 0) {
+			System.arraycopy(edges, 0, ids, 0, count);
+		}
+		return new PathSet(dictionary, ids);
+	}
+
+	private static int[] append(int[] edges, int count, int edge) {
+		int[] result = edges;
+		if (edges == null) {
+			result = new int[4];
+		} else if (count == edges.length) {
+			result = new int[Math.max(4, edges.length * 2)];
+			System.arraycopy(edges, 0, result, 0, count);
+		}
+		result[count] = edge;
+		return result;
+	}
+
+	/**
+	 * Removes the given edge from the array by replacing it with the last
+	 * edge. Returns the new number of edges.
+	 */
+	private static int removeEdge(int[] edges, int count, int edge) {
+		for (int i = 0; i < count; i++) {
+			if (edges[i] == edge) {
+				edges[i] = edges[count - 1];
+				return count - 1;
+			}
+		}
+		return count;
+	}
+}
@@ -13,17 +13,26 @@
  ******************************************************************************/
 package de.devboost.eclipse.jdtutilities;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
@@ -42,13 +51,30 @@ import org.eclipse.jdt.core.search.SearchRequestor;
  * Note: This class allows to find dependencies between classes which are 
  * located in the workspace only. It cannot be used to analyze dependencies to
  * classes located in the running Eclipse instance or the JDK.
+ * 
+ * If a warm {@link ClassDependencyIndex} is set using
+ * {@link #setIndex(ClassDependencyIndex)}, queries are answered by the index
+ * instead of running a search. The results of 
+ * {@link #findReferencesFrom(String)} can additionally be memoized using a
+ * {@link ClassDependencyCache} (see {@link #setCache(ClassDependencyCache)}).
  */
 public abstract class ClassDependencyUtility {
 	
 	private interface IReferenceFinder {
-		public Set<String> find(String path) throws CoreException;
+		
+		/**
+		 * Returns the union of the references of all given paths.
+		 */
+		public Set<String> find(List<String> paths, IProgressMonitor monitor) throws CoreException;
 	}
 
+	/**
+	 * The {@link DependencySearchRequestor} adds the resources of all matches
+	 * to one result set. If the search pattern combines multiple types, the
+	 * matches are not attributed to the individual types, because
+	 * {@link SearchMatch} does not tell which part of an OR pattern it
+	 * matched. All callers need the union of the references anyway.
+	 */
 	private class DependencySearchRequestor extends SearchRequestor {
 		
 		private Set<String> result;
@@ -67,49 +93,373 @@ public abstract class ClassDependencyUtility {
 		}
 	}
 
+	/**
+	 * The time (in milliseconds) to wait for a parallel search before checking
+	 * the progress monitor for cancellation again.
+	 */
+	private static final long CANCELLATION_CHECK_INTERVAL = 100;
+
+	/**
+	 * The maximum number of types that are combined into a single search
+	 * pattern.
+	 */
+	private static final int MAX_TYPES_PER_SEARCH = 256;
+
+	private ClassDependencyIndex index;
+
+	private ClassDependencyCache cache;
+
+	private int parallelism = 1;
+
+	/**
+	 * Returns the index that is used to answer queries or <code>null</code> if
+	 * no index is set.
+	 */
+	public ClassDependencyIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Sets the index that is used to answer queries. As long as the index is
+	 * not warm (see {@link ClassDependencyIndex#isWarm()}), the search engine
+	 * is used instead.
+	 */
+	public void setIndex(ClassDependencyIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * Returns the cache that is used to memoize the results of
+	 * {@link #findReferencesFrom(String)} or <code>null</code> if no cache is
+	 * set.
+	 */
+	public ClassDependencyCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets the cache that is used to memoize the results of
+	 * {@link #findReferencesFrom(String)}.
+	 */
+	public void setCache(ClassDependencyCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns an {@link IDependencyExtractor} that uses the JDT search engine
+	 * and can therefore be used to build a {@link ClassDependencyIndex}.
+	 */
+	public IDependencyExtractor createSearchBasedExtractor() {
+		return new IDependencyExtractor() {
+			
+			@Override
+			public Set<String> findReferencesFrom(String path) throws CoreException {
+				return searchReferencesFrom(path);
+			}
+		};
+	}
+
 	/**
 	 * Returns the paths of all Java elements that reference the element at the 
 	 * given path.
 	 */
 	public Set<String> findReferencesTo(String path) throws CoreException {
-		return find(path, IJavaSearchConstants.REFERENCES);
-	}
-
-	private Set<String> findTransitively(String path, IReferenceFinder finder) throws CoreException {
-		Set<String> references = new LinkedHashSet<String>();
-		Set<String> pathsToVisit = new LinkedHashSet<String>();
-		pathsToVisit.add(path);
-		while (!pathsToVisit.isEmpty()) {
-			// search for new elements
-			Iterator<String> iterator = pathsToVisit.iterator();
-			String nextPath = iterator.next();
-			iterator.remove();
-
-			if (!references.contains(nextPath)) {
-				Set<String> dependencies = finder.find(nextPath);
-				pathsToVisit.addAll(dependencies);
+		if (index != null) {
+			Set<String> indexedReferences = index.getReferencesTo(path);
+			if (indexedReferences != null) {
+				return indexedReferences;
 			}
+		}
+		return find(Collections.singletonList(path), IJavaSearchConstants.REFERENCES, new NullProgressMonitor());
+	}
+
+	/**
+	 * Returns the paths of all Java elements that reference one of the elements
+	 * at the given paths. If the index is not available, the references to all
+	 * types contained in the given paths are searched at once.
+	 */
+	public Set<String> findReferencesTo(Collection<String> paths) throws CoreException {
+		return findReferencesTo(paths, new NullProgressMonitor());
+	}
 
-			references.add(nextPath);
+	/**
+	 * Returns the paths of all Java elements that reference one of the elements
+	 * at the given paths. The search can be cancelled using the given monitor.
+	 */
+	private Set<String> findReferencesTo(Collection<String> paths, IProgressMonitor monitor) throws CoreException {
+		if (index != null && index.isWarm()) {
+			Set<String> result = new LinkedHashSet<String>();
+			for (String path : paths) {
+				checkCanceled(monitor);
+				result.addAll(findReferencesTo(path));
+			}
+			return result;
+		}
+		return find(paths, IJavaSearchConstants.REFERENCES, monitor);
+	}
+
+	/**
+	 * Computes the transitive closure of the given finder using a
+	 * level-synchronous breadth-first search. All paths of the current level
+	 * (the frontier) are expanded in parallel if the parallelism is greater
+	 * than one. The visited set is only modified between two levels by the
+	 * calling thread, which merges the results of the frontier in order. This
+	 * way, the result does not depend on the parallelism.
+	 * 
+	 * The visited paths are stored in a {@link PathSet}, which is returned as
+	 * result. The frontier holds the canonical path instances of the
+	 * {@link PathDictionary} to avoid keeping duplicate strings in memory.
+	 * Each search uses its own unsynchronized dictionary. Thus, the
+	 * dictionary does not outlive the result, and the IDs are assigned in the
+	 * order in which the paths are discovered, which is the order in which the
+	 * result is iterated. Since the IDs are added in ascending order, the
+	 * result is built in linear time.
+	 * 
+	 * @param maxDepth the maximum number of levels to expand or a negative 
+	 *        value to compute the complete closure
+	 * @param visitor a visitor that is notified after each level (may be
+	 *        <code>null</code>)
+	 */
+	private PathSet findTransitively(String path, IReferenceFinder finder, int maxDepth,
+			ITransitiveReferenceVisitor visitor, IProgressMonitor monitor) throws CoreException {
+		
+		PathDictionary dictionary = new PathDictionary();
+		PathSet references = new PathSet(dictionary);
+		int pathID = dictionary.getID(path);
+		references.addID(pathID);
+		List<String> frontier = new ArrayList<String>();
+		frontier.add(dictionary.getPath(pathID));
+		if (!visitLevel(visitor, 0, frontier)) {
+			return references;
+		}
+		
+		ExecutorService executor = null;
+		if (parallelism > 1) {
+			executor = Executors.newFixedThreadPool(parallelism);
+		}
+		monitor.beginTask("Searching transitive references", IProgressMonitor.UNKNOWN);
+		try {
+			int depth = 0;
+			while (!frontier.isEmpty() && (maxDepth < 0 || depth < maxDepth)) {
+				List<Set<String>> dependencies = expand(frontier, finder, executor, monitor);
+				List<String> nextFrontier = new ArrayList<String>();
+				for (Set<String> dependenciesOfPath : dependencies) {
+					for (String dependency : dependenciesOfPath) {
+						int dependencyID = dictionary.getID(dependency);
+						if (references.addID(dependencyID)) {
+							nextFrontier.add(dictionary.getPath(dependencyID));
+						}
+					}
+				}
+				frontier = nextFrontier;
+				depth++;
+				if (!frontier.isEmpty() && !visitLevel(visitor, depth, frontier)) {
+					break;
+				}
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			monitor.done();
 		}
 		return references;
 	}
+
+	private boolean visitLevel(ITransitiveReferenceVisitor visitor, int depth, List<String> paths) {
+		if (visitor == null) {
+			return true;
+		}
+		Set<String> pathSet = Collections.unmodifiableSet(new LinkedHashSet<String>(paths));
+		return visitor.visitLevel(depth, pathSet);
+	}
+
+	/**
+	 * Applies the finder to all paths of the given frontier. If an executor is
+	 * given, the frontier is split into one partition per thread and the
+	 * partitions are searched concurrently. The dependencies are returned in
+	 * the order of the partitions.
+	 */
+	private List<Set<String>> expand(List<String> frontier, final IReferenceFinder finder,
+			ExecutorService executor, final IProgressMonitor monitor) throws CoreException {
+		
+		List<Set<String>> result = new ArrayList<Set<String>>();
+		if (executor == null || frontier.size() == 1) {
+			checkCanceled(monitor);
+			result.add(finder.find(frontier, monitor));
+			monitor.worked(frontier.size());
+			return result;
+		}
+		
+		List<List<String>> partitions = partition(frontier, parallelism);
+		List<Future<Set<String>>> futures = new ArrayList<Future<Set<String>>>(partitions.size());
+		for (final List<String> partition : partitions) {
+			futures.add(executor.submit(new Callable<Set<String>>() {
+
+				@Override
+				public Set<String> call() throws Exception {
+					return finder.find(partition, monitor);
+				}
+			}));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			result.add(waitFor(futures.get(i), monitor));
+			monitor.worked(partitions.get(i).size());
+		}
+		return result;
+	}
+
+	/**
+	 * Splits the given list into (at most) the given number of consecutive
+	 * partitions of similar size.
+	 */
+	private List<List<String>> partition(List<String> paths, int numberOfPartitions) {
+		int partitionSize = (paths.size() + numberOfPartitions - 1) / numberOfPartitions;
+		List<List<String>> partitions = new ArrayList<List<String>>(numberOfPartitions);
+		for (int start = 0; start < paths.size(); start += partitionSize) {
+			int end = Math.min(paths.size(), start + partitionSize);
+			partitions.add(paths.subList(start, end));
+		}
+		return partitions;
+	}
+
+	/**
+	 * Waits for the given future to complete while checking the monitor for
+	 * cancellation.
+	 */
+	private Set<String> waitFor(Future<Set<String>> future, IProgressMonitor monitor) throws CoreException {
+		while (true) {
+			checkCanceled(monitor);
+			try {
+				return future.get(CANCELLATION_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// check for cancellation again
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof CoreException) {
+					throw (CoreException) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	private void checkCanceled(IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	/**
+	 * Returns the number of threads that are used to search for transitive
+	 * references.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads that are used to search for transitive
+	 * references. If the parallelism is one (which is the default), all
+	 * searches are performed by the calling thread.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+	}
 	
 	/**
 	 * Returns the paths of all Java elements that reference the element at the 
 	 * given path. Also, elements that reference these elements (and so on) are
 	 * returned.
 	 * 
-	 * @return a set of transitive references 
+	 * @return a set of transitive references (a {@link PathSet})
 	 */
 	public Set<String> findReferencesFromTransitively(String path) throws CoreException {
+		return findReferencesFromTransitively(path, new NullProgressMonitor());
+	}
+
+	/**
+	 * Returns the paths of all Java elements that reference the element at the 
+	 * given path. Also, elements that reference these elements (and so on) are
+	 * returned. The search can be cancelled using the given monitor, which 
+	 * causes an {@link OperationCanceledException} to be thrown.
+	 * 
+	 * @return a set of transitive references (a {@link PathSet})
+	 */
+	public Set<String> findReferencesFromTransitively(String path, IProgressMonitor monitor) throws CoreException {
 		return findTransitively(path, new IReferenceFinder() {
 			
 			@Override
-			public Set<String> find(String path) throws CoreException {
-				return findReferencesFrom(path);
+			public Set<String> find(List<String> paths, IProgressMonitor monitor) throws CoreException {
+				// the JDT cannot search declarations of referenced types for
+				// multiple types at once
+				Set<String> result = new LinkedHashSet<String>();
+				for (String path : paths) {
+					checkCanceled(monitor);
+					result.addAll(findReferencesFrom(path));
+				}
+				return result;
 			}
-		});
+		}, -1, null, monitor);
+	}
+
+	/**
+	 * Returns the paths of all Java elements that transitively reference the
+	 * element at the given path (i.e., all elements that depend on it). The
+	 * given path is contained in the result as well. The result is a
+	 * {@link PathSet}.
+	 */
+	public Set<String> findReferencesToTransitively(String path) throws CoreException {
+		return findReferencesToTransitively(path, -1);
+	}
+
+	/**
+	 * Returns the paths of all Java elements that transitively reference the
+	 * element at the given path. Only references that are at most 
+	 * <code>maxDepth</code> steps away from the element are returned. The
+	 * given path is contained in the result as well.
+	 * 
+	 * @param maxDepth the maximum distance to the element at the given path or
+	 *        a negative value to compute the complete closure
+	 */
+	public Set<String> findReferencesToTransitively(String path, int maxDepth) throws CoreException {
+		return findReferencesToTransitively(path, maxDepth, null, new NullProgressMonitor());
+	}
+
+	/**
+	 * Returns the paths of all Java elements that transitively reference the
+	 * element at the given path. Whenever all references of one level have
+	 * been found, they are passed to the given visitor. If the visitor returns
+	 * <code>false</code>, the search is stopped and the references found so far
+	 * are returned.
+	 * 
+	 * @param maxDepth the maximum distance to the element at the given path or
+	 *        a negative value to compute the complete closure
+	 * @param visitor the visitor to notify (may be <code>null</code>)
+	 * @param monitor a monitor that can be used to cancel the search
+	 */
+	public Set<String> findReferencesToTransitively(String path, int maxDepth,
+			ITransitiveReferenceVisitor visitor, IProgressMonitor monitor) throws CoreException {
+		
+		return findTransitively(path, new IReferenceFinder() {
+			
+			@Override
+			public Set<String> find(List<String> paths, IProgressMonitor monitor) throws CoreException {
+				return findReferencesTo(paths, monitor);
+			}
+		}, maxDepth, visitor, monitor);
 	}
 
 	/**
@@ -117,6 +467,32 @@ public abstract class ClassDependencyUtility {
 	 * at the given path.
 	 */
 	public Set<String> findReferencesFrom(String path) throws CoreException {
+		ClassDependencyCache cache = this.cache;
+		if (cache == null) {
+			return computeReferencesFrom(path);
+		}
+		
+		Set<String> cachedReferences = cache.get(path);
+		if (cachedReferences != null) {
+			return cachedReferences;
+		}
+		long stamp = cache.getModificationStamp();
+		Set<String> references = computeReferencesFrom(path);
+		cache.put(path, references, stamp);
+		return references;
+	}
+
+	private Set<String> computeReferencesFrom(String path) throws CoreException {
+		if (index != null) {
+			Set<String> indexedReferences = index.getReferencesFrom(path);
+			if (indexedReferences != null) {
+				return indexedReferences;
+			}
+		}
+		return searchReferencesFrom(path);
+	}
+
+	private Set<String> searchReferencesFrom(String path) throws CoreException {
 		Set<String> result = new LinkedHashSet<String>();
 		List<IType> types = getTypes(path);
 		if (types.isEmpty()) {
@@ -132,10 +508,20 @@ public abstract class ClassDependencyUtility {
 		return result;
 	}
 
-	private Set<String> find(String path, int searchType) throws CoreException {
+	/**
+	 * Searches for all types contained in the given paths. Instead of running
+	 * one search per type, the search patterns for the types are combined
+	 * using {@link SearchPattern#createOrPattern(SearchPattern, SearchPattern)}
+	 * to scan the search index only once per {@link #MAX_TYPES_PER_SEARCH}
+	 * types. The searches are canceled if the given monitor is canceled.
+	 */
+	private Set<String> find(Collection<String> paths, int searchType, final IProgressMonitor monitor)
+			throws CoreException {
 		Set<String> result = new LinkedHashSet<String>();
-		// mark this element as visited
-		List<IType> types = getTypes(path);
+		List<IType> types = new ArrayList<IType>();
+		for (String path : paths) {
+			types.addAll(getTypes(path));
+		}
 		if (types.isEmpty()) {
 			return result;
 		}
@@ -144,10 +530,39 @@ public abstract class ClassDependencyUtility {
 		SearchParticipant[] participants = new SearchParticipant[] {SearchEngine.getDefaultSearchParticipant()};
 		IJavaSearchScope scope = createScope();
 		SearchRequestor requestor = new DependencySearchRequestor(result);
-		IProgressMonitor monitor = new NullProgressMonitor();
+		// The search engine reports its own progress, which must not be
+		// mixed with the progress of the caller. Also, the monitor may be
+		// shared by multiple threads. Thus, only cancellation is forwarded.
+		IProgressMonitor searchMonitor = new NullProgressMonitor() {
+
+			@Override
+			public boolean isCanceled() {
+				return monitor.isCanceled();
+			}
+		};
+		for (int start = 0; start < types.size(); start += MAX_TYPES_PER_SEARCH) {
+			checkCanceled(monitor);
+			int end = Math.min(types.size(), start + MAX_TYPES_PER_SEARCH);
+			SearchPattern pattern = createOrPattern(types.subList(start, end), searchType);
+			if (pattern != null) {
+				engine.search(pattern, participants, scope, requestor, searchMonitor);
+			}
+		}
+		return result;
+	}
+
+	private SearchPattern createOrPattern(List<IType> types, int searchType) {
+		SearchPattern result = null;
 		for (IType type : types) {
 			SearchPattern pattern = SearchPattern.createPattern(type, searchType);
-			engine.search(pattern, participants, scope, requestor, monitor);
+			if (pattern == null) {
+				continue;
+			}
+			if (result == null) {
+				result = pattern;
+			} else {
+				result = SearchPattern.createOrPattern(result, pattern);
+			}
 		}
 		return result;
 	}
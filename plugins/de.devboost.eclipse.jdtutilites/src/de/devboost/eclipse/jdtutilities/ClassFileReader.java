@@ -0,0 +1,423 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The {@link ClassFileReader} extracts the names of all classes that are
+ * referenced by a Java class file. It reads the class entries of the constant
+ * pool, the descriptors of fields, methods and invocations and the generic
+ * signatures of the class and its members. The code of the methods is not
+ * parsed, because all classes referenced by the code are contained in the
+ * constant pool.
+ *
+ * The names are returned in internal form (e.g., <code>java/lang/String</code>).
+ */
+final class ClassFileReader {
+
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+
+	private static final String SIGNATURE_ATTRIBUTE = "Signature";
+
+	private final ByteBuffer buffer;
+
+	private int[] utf8Offsets;
+	private int[] utf8Lengths;
+
+	private String className;
+	private final Set<String> referencedClassNames = new LinkedHashSet<String>();
+
+	private ClassFileReader(ByteBuffer buffer) {
+		super();
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Reads the class file at the given location. The file is read into a heap
+	 * buffer and closed right away. Memory-mapping is not used, because
+	 * mapped files stay locked (on Windows) until the buffer is garbage
+	 * collected, which prevents the builder from replacing them, and because
+	 * class files are usually too small to benefit from it.
+	 */
+	public static ClassFileReader read(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		byte[] bytes;
+		try {
+			long length = randomAccessFile.length();
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Class file too large: " + file);
+			}
+			bytes = new byte[(int) length];
+			randomAccessFile.readFully(bytes);
+		} finally {
+			randomAccessFile.close();
+		}
+		return read(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Reads the class file contained in the given buffer.
+	 */
+	public static ClassFileReader read(ByteBuffer buffer) throws IOException {
+		ClassFileReader reader = new ClassFileReader(buffer);
+		try {
+			reader.parse();
+		} catch (RuntimeException e) {
+			// buffer underflows and the like indicate a corrupt class file
+			throw new IOException("Malformed class file: " + e.getMessage(), e);
+		}
+		return reader;
+	}
+
+	/**
+	 * Returns the name of the class contained in the class file.
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * Returns the names of all classes that are referenced by the class file.
+	 * The name of the class itself is not contained.
+	 */
+	public Set<String> getReferencedClassNames() {
+		return referencedClassNames;
+	}
+
+	private void parse() throws IOException {
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not a class file.");
+		}
+		// skip minor and major version
+		skip(4);
+
+		int constantPoolCount = readUnsignedShort();
+		utf8Offsets = new int[constantPoolCount];
+		utf8Lengths = new int[constantPoolCount];
+		int[] classNameIndices = new int[constantPoolCount];
+		int[] descriptorIndices = new int[constantPoolCount];
+		readConstantPool(constantPoolCount, classNameIndices, descriptorIndices);
+
+		// skip access flags
+		skip(2);
+		int thisClass = readUnsignedShort();
+		className = readUtf8(classNameIndices[thisClass]);
+		// the super class and the interfaces are contained in the constant
+		// pool
+		skip(2);
+		int interfacesCount = readUnsignedShort();
+		skip(2 * interfacesCount);
+
+		readMembers();
+		readMembers();
+		readAttributes();
+
+		for (int i = 1; i < constantPoolCount; i++) {
+			if (classNameIndices[i] > 0 && i != thisClass) {
+				addClassName(readUtf8(classNameIndices[i]));
+			}
+			if (descriptorIndices[i] > 0) {
+				addSignature(readUtf8(descriptorIndices[i]));
+			}
+		}
+		referencedClassNames.remove(className);
+	}
+
+	private void readConstantPool(int count, int[] classNameIndices, int[] descriptorIndices) throws IOException {
+		for (int i = 1; i < count; i++) {
+			int tag = buffer.get() & 0xFF;
+			switch (tag) {
+			case CONSTANT_UTF8:
+				int length = readUnsignedShort();
+				utf8Offsets[i] = buffer.position();
+				utf8Lengths[i] = length;
+				skip(length);
+				break;
+			case CONSTANT_CLASS:
+				classNameIndices[i] = readUnsignedShort();
+				break;
+			case CONSTANT_NAME_AND_TYPE:
+				// skip name
+				skip(2);
+				descriptorIndices[i] = readUnsignedShort();
+				break;
+			case CONSTANT_METHOD_TYPE:
+				descriptorIndices[i] = readUnsignedShort();
+				break;
+			case CONSTANT_STRING:
+			case CONSTANT_MODULE:
+			case CONSTANT_PACKAGE:
+				skip(2);
+				break;
+			case CONSTANT_METHOD_HANDLE:
+				skip(3);
+				break;
+			case CONSTANT_INTEGER:
+			case CONSTANT_FLOAT:
+			case CONSTANT_FIELDREF:
+			case CONSTANT_METHODREF:
+			case CONSTANT_INTERFACE_METHODREF:
+			case CONSTANT_DYNAMIC:
+			case CONSTANT_INVOKE_DYNAMIC:
+				skip(4);
+				break;
+			case CONSTANT_LONG:
+			case CONSTANT_DOUBLE:
+				skip(8);
+				// long and double constants take two entries
+				i++;
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+	}
+
+	/**
+	 * Reads the fields or methods of the class and adds the types used in
+	 * their descriptors and signatures.
+	 */
+	private void readMembers() {
+		int count = readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			// skip access flags and name
+			skip(4);
+			addSignature(readUtf8(readUnsignedShort()));
+			readAttributes();
+		}
+	}
+
+	private void readAttributes() {
+		int count = readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			String name = readUtf8(readUnsignedShort());
+			int length = buffer.getInt();
+			if (SIGNATURE_ATTRIBUTE.equals(name)) {
+				addSignature(readUtf8(readUnsignedShort()));
+				skip(length - 2);
+			} else {
+				skip(length);
+			}
+		}
+	}
+
+	private void addClassName(String name) {
+		if (name.startsWith("[")) {
+			// array classes are given as descriptors
+			addSignature(name);
+		} else {
+			referencedClassNames.add(name);
+		}
+	}
+
+	/**
+	 * Adds all classes that are referenced by the given descriptor or
+	 * generic signature. Descriptors are a subset of signatures and can
+	 * therefore be parsed the same way.
+	 */
+	private void addSignature(String signature) {
+		new SignatureParser(signature, referencedClassNames).parse();
+	}
+
+	private String readUtf8(int index) {
+		int offset = utf8Offsets[index];
+		int end = offset + utf8Lengths[index];
+		char[] chars = new char[utf8Lengths[index]];
+		int count = 0;
+		int i = offset;
+		// decode modified UTF-8
+		while (i < end) {
+			int b1 = buffer.get(i++) & 0xFF;
+			if (b1 < 0x80) {
+				chars[count++] = (char) b1;
+			} else if ((b1 & 0xE0) == 0xC0) {
+				int b2 = buffer.get(i++) & 0x3F;
+				chars[count++] = (char) (((b1 & 0x1F) << 6) | b2);
+			} else {
+				int b2 = buffer.get(i++) & 0x3F;
+				int b3 = buffer.get(i++) & 0x3F;
+				chars[count++] = (char) (((b1 & 0x0F) << 12) | (b2 << 6) | b3);
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	private int readUnsignedShort() {
+		return buffer.getShort() & 0xFFFF;
+	}
+
+	private void skip(int bytes) {
+		buffer.position(buffer.position() + bytes);
+	}
+
+	/**
+	 * A parser for field descriptors, method descriptors and generic
+	 * signatures (see JVM specification, section 4.7.9.1).
+	 */
+	private static class SignatureParser {
+
+		private final String signature;
+		private final Set<String> result;
+		private int position;
+
+		private SignatureParser(String signature, Set<String> result) {
+			this.signature = signature;
+			this.result = result;
+		}
+
+		private void parse() {
+			if (signature.length() == 0) {
+				return;
+			}
+			if (peek() == '<') {
+				parseFormalTypeParameters();
+			}
+			while (position < signature.length()) {
+				char c = peek();
+				if (c == '(' || c == ')' || c == '^' || isBaseType(c)) {
+					position++;
+				} else {
+					parseReferenceType();
+				}
+			}
+		}
+
+		private void parseFormalTypeParameters() {
+			// skip '<'
+			position++;
+			while (peek() != '>') {
+				// skip identifier
+				position = signature.indexOf(':', position);
+				while (peek() == ':') {
+					position++;
+					// the class bound is optional
+					if (peek() != ':' && peek() != '>') {
+						parseReferenceType();
+					}
+				}
+			}
+			// skip '>'
+			position++;
+		}
+
+		private void parseReferenceType() {
+			char c = peek();
+			if (c == 'L') {
+				position++;
+				int start = position;
+				skipIdentifier();
+				result.add(signature.substring(start, position));
+				while (true) {
+					c = peek();
+					if (c == '<') {
+						parseTypeArguments();
+					} else if (c == '.') {
+						// inner class of a parameterized type
+						position++;
+						skipIdentifier();
+					} else {
+						// skip ';'
+						position++;
+						return;
+					}
+				}
+			} else if (c == 'T') {
+				// type variable
+				position = signature.indexOf(';', position) + 1;
+			} else if (c == '[') {
+				position++;
+				if (isBaseType(peek())) {
+					position++;
+				} else {
+					parseReferenceType();
+				}
+			} else {
+				throw new IllegalArgumentException("Malformed signature " + signature);
+			}
+		}
+
+		private void parseTypeArguments() {
+			// skip '<'
+			position++;
+			while (peek() != '>') {
+				char c = peek();
+				if (c == '*') {
+					position++;
+				} else {
+					if (c == '+' || c == '-') {
+						position++;
+					}
+					parseReferenceType();
+				}
+			}
+			// skip '>'
+			position++;
+		}
+
+		private void skipIdentifier() {
+			while (true) {
+				char c = peek();
+				if (c == ';' || c == '<' || c == '.') {
+					return;
+				}
+				position++;
+			}
+		}
+
+		private char peek() {
+			return signature.charAt(position);
+		}
+
+		private boolean isBaseType(char c) {
+			switch (c) {
+			case 'B':
+			case 'C':
+			case 'D':
+			case 'F':
+			case 'I':
+			case 'J':
+			case 'S':
+			case 'Z':
+			case 'V':
+				return true;
+			default:
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link CleanWorkspaceReport} records the time that was spent to clean and
+ * to build each project during a run of the {@link AbstractCleanWorkspaceJob}
+ * together with the number of problem markers the project has after its
+ * build. Times are measured as wall-clock time and as CPU time of the thread
+ * that performed the operation (work that builders delegate to other threads
+ * is not included in the CPU time). CPU times are -1 if the VM does not
+ * support measuring them.
+ *
+ * The report can be converted to JSON using {@link #toJSON()} to compare the
+ * rebuild times across releases.
+ */
+public class CleanWorkspaceReport {
+
+	/**
+	 * The measurements for a single project.
+	 */
+	public static class ProjectTimes {
+
+		private final String projectName;
+
+		private long cleanWallNanos;
+		private long cleanCPUNanos = -1;
+		private long buildWallNanos;
+		private long buildCPUNanos = -1;
+		private int markerCount;
+
+		private ProjectTimes(String projectName) {
+			this.projectName = projectName;
+		}
+
+		public String getProjectName() {
+			return projectName;
+		}
+
+		public long getCleanWallNanos() {
+			return cleanWallNanos;
+		}
+
+		public long getCleanCPUNanos() {
+			return cleanCPUNanos;
+		}
+
+		public long getBuildWallNanos() {
+			return buildWallNanos;
+		}
+
+		public long getBuildCPUNanos() {
+			return buildCPUNanos;
+		}
+
+		/**
+		 * Returns the number of problem markers of the project after it was
+		 * built.
+		 */
+		public int getMarkerCount() {
+			return markerCount;
+		}
+	}
+
+	/**
+	 * A measurement that was started by {@link CleanWorkspaceReport#start()}.
+	 */
+	class Stopwatch {
+
+		private final long wallStart = System.nanoTime();
+		private final long cpuStart = getCurrentThreadCPUTime();
+
+		private long getWallNanos() {
+			return System.nanoTime() - wallStart;
+		}
+
+		private long getCPUNanos() {
+			long cpuEnd = getCurrentThreadCPUTime();
+			if (cpuStart < 0 || cpuEnd < 0) {
+				return -1;
+			}
+			return cpuEnd - cpuStart;
+		}
+	}
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	private final Map<String, ProjectTimes> projects = new LinkedHashMap<String, ProjectTimes>();
+
+	private final long startMillis = System.currentTimeMillis();
+	private final long startNanos = System.nanoTime();
+	private long totalWallNanos = -1;
+	private boolean canceled;
+
+	Stopwatch start() {
+		return new Stopwatch();
+	}
+
+	synchronized void recordClean(String projectName, Stopwatch stopwatch) {
+		ProjectTimes times = getOrCreate(projectName);
+		times.cleanWallNanos = stopwatch.getWallNanos();
+		times.cleanCPUNanos = stopwatch.getCPUNanos();
+	}
+
+	synchronized void recordBuild(String projectName, Stopwatch stopwatch, int markerCount) {
+		ProjectTimes times = getOrCreate(projectName);
+		times.buildWallNanos = stopwatch.getWallNanos();
+		times.buildCPUNanos = stopwatch.getCPUNanos();
+		times.markerCount = markerCount;
+	}
+
+	synchronized void finish(boolean canceled) {
+		this.canceled = canceled;
+		this.totalWallNanos = System.nanoTime() - startNanos;
+	}
+
+	private ProjectTimes getOrCreate(String projectName) {
+		ProjectTimes times = projects.get(projectName);
+		if (times == null) {
+			times = new ProjectTimes(projectName);
+			projects.put(projectName, times);
+		}
+		return times;
+	}
+
+	private long getCurrentThreadCPUTime() {
+		if (!threadBean.isCurrentThreadCpuTimeSupported()) {
+			return -1;
+		}
+		return threadBean.getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * Returns the measurements for all projects in the order the projects
+	 * were cleaned.
+	 */
+	public synchronized List<ProjectTimes> getProjects() {
+		return new ArrayList<ProjectTimes>(projects.values());
+	}
+
+	/**
+	 * Returns the wall-clock time of the whole run or -1 if the run has not
+	 * finished yet.
+	 */
+	public synchronized long getTotalWallNanos() {
+		return totalWallNanos;
+	}
+
+	/**
+	 * Returns <code>true</code> if the run was canceled.
+	 */
+	public synchronized boolean isCanceled() {
+		return canceled;
+	}
+
+	/**
+	 * Returns the report as JSON object. Times are given in milliseconds.
+	 */
+	public synchronized String toJSON() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"start\": ").append(startMillis).append(",\n");
+		json.append("  \"totalWallMillis\": ").append(toMillis(totalWallNanos)).append(",\n");
+		json.append("  \"canceled\": ").append(canceled).append(",\n");
+		json.append("  \"projects\": [");
+		boolean first = true;
+		for (ProjectTimes times : projects.values()) {
+			json.append(first ? "\n" : ",\n");
+			first = false;
+			json.append("    {");
+			json.append("\"name\": ");
+			appendString(json, times.projectName);
+			json.append(", \"cleanWallMillis\": ").append(toMillis(times.cleanWallNanos));
+			json.append(", \"cleanCpuMillis\": ").append(toMillis(times.cleanCPUNanos));
+			json.append(", \"buildWallMillis\": ").append(toMillis(times.buildWallNanos));
+			json.append(", \"buildCpuMillis\": ").append(toMillis(times.buildCPUNanos));
+			json.append(", \"markerCount\": ").append(times.markerCount);
+			json.append("}");
+		}
+		json.append(first ? "]\n" : "\n  ]\n");
+		json.append("}\n");
+		return json.toString();
+	}
+
+	private long toMillis(long nanos) {
+		if (nanos < 0) {
+			return -1;
+		}
+		return nanos / 1000000;
+	}
+
+	private void appendString(StringBuilder json, String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+}
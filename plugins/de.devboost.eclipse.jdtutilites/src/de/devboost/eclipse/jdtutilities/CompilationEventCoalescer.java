@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.jdt.core.compiler.BuildContext;
+
+/**
+ * The {@link CompilationEventCoalescer} collapses compilation events that
+ * refer to the same file into a single event. The consolidated event carries
+ * the most recent build context of the file and is a batch event if any of
+ * the collapsed events was a batch event. Events are returned in the order
+ * their files were built last.
+ * 
+ * Instances of this class are not thread-safe.
+ */
+final class CompilationEventCoalescer {
+
+	private final Map<Object, CompilationEvent> events = new LinkedHashMap<Object, CompilationEvent>();
+
+	/**
+	 * Adds the given events and returns the number of files that were not
+	 * contained before.
+	 */
+	public int add(Collection<CompilationEvent> newEvents) {
+		int addedFiles = 0;
+		for (CompilationEvent event : newEvents) {
+			Object key = getKey(event);
+			CompilationEvent previousEvent = events.remove(key);
+			if (previousEvent == null) {
+				addedFiles++;
+			} else if (previousEvent.isBatch() && !event.isBatch()) {
+				event = new CompilationEvent(event.getContext(), true);
+			}
+			// the latest event for a file is moved to the end
+			events.put(key, event);
+		}
+		return addedFiles;
+	}
+
+	/**
+	 * Removes and returns the consolidated events.
+	 */
+	public List<CompilationEvent> takeEvents() {
+		List<CompilationEvent> result = new ArrayList<CompilationEvent>(events.values());
+		events.clear();
+		return result;
+	}
+
+	/**
+	 * Returns the number of files for which events are contained.
+	 */
+	public int size() {
+		return events.size();
+	}
+
+	/**
+	 * Returns the given events without duplicates.
+	 */
+	public static List<CompilationEvent> coalesce(List<CompilationEvent> events) {
+		if (events.size() < 2) {
+			return events;
+		}
+		CompilationEventCoalescer coalescer = new CompilationEventCoalescer();
+		int files = coalescer.add(events);
+		if (files == events.size()) {
+			// no duplicates
+			return events;
+		}
+		return coalescer.takeEvents();
+	}
+
+	/**
+	 * Returns the key that identifies the file of the given event.
+	 */
+	private static Object getKey(CompilationEvent event) {
+		BuildContext context = event.getContext();
+		IFile file = context.getFile();
+		if (file == null) {
+			return context;
+		}
+		return file.getFullPath().toString();
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The {@link CompilationEventQueue} collects the compilation events of a
+ * single project. The events are added in batches (one array per call to
+ * {@link AbstractCompilationParticipant#buildStarting(org.eclipse.jdt.core.compiler.BuildContext[], boolean)})
+ * that are pushed onto a lock-free stack. {@link #drain()} removes all batches
+ * using a single atomic swap and returns a list view of the events without
+ * copying them.
+ */
+final class CompilationEventQueue {
+
+	private static class Batch {
+
+		private final CompilationEvent[] events;
+		private Batch next;
+
+		private Batch(CompilationEvent[] events) {
+			this.events = events;
+		}
+	}
+
+	/**
+	 * An unmodifiable list that is backed by the arrays of a sequence of
+	 * batches.
+	 */
+	private static class BatchList extends AbstractList<CompilationEvent> {
+
+		private final CompilationEvent[][] batches;
+		private final int[] offsets;
+		private final int size;
+
+		private BatchList(CompilationEvent[][] batches) {
+			this.batches = batches;
+			this.offsets = new int[batches.length];
+			int offset = 0;
+			for (int i = 0; i < batches.length; i++) {
+				offsets[i] = offset;
+				offset += batches[i].length;
+			}
+			this.size = offset;
+		}
+
+		@Override
+		public CompilationEvent get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			int batch = Arrays.binarySearch(offsets, index);
+			if (batch < 0) {
+				batch = -batch - 2;
+			} else {
+				// skip empty batches that start at the same offset
+				while (batch + 1 < offsets.length && offsets[batch + 1] == index) {
+					batch++;
+				}
+			}
+			return batches[batch][index - offsets[batch]];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	private final AtomicReference<Batch> head = new AtomicReference<Batch>();
+
+	/**
+	 * Adds the given events. This method can be called concurrently.
+	 */
+	public void push(CompilationEvent[] events) {
+		Batch batch = new Batch(events);
+		Batch currentHead;
+		do {
+			currentHead = head.get();
+			batch.next = currentHead;
+		} while (!head.compareAndSet(currentHead, batch));
+	}
+
+	/**
+	 * Removes all events from the queue and returns them in the order they
+	 * were added.
+	 */
+	public List<CompilationEvent> drain() {
+		Batch batch = head.getAndSet(null);
+		if (batch == null) {
+			return Collections.emptyList();
+		}
+
+		int count = 0;
+		for (Batch current = batch; current != null; current = current.next) {
+			count++;
+		}
+		// the stack contains the batches in reverse order
+		CompilationEvent[][] batches = new CompilationEvent[count][];
+		for (Batch current = batch; current != null; current = current.next) {
+			batches[--count] = current.events;
+		}
+		return new BatchList(batches);
+	}
+
+	/**
+	 * Returns <code>true</code> if the queue does not contain any events.
+	 */
+	public boolean isEmpty() {
+		return head.get() == null;
+	}
+}
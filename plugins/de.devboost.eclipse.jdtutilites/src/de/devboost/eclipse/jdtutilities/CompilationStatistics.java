@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdt.core.compiler.BuildContext;
+
+/**
+ * The {@link CompilationStatistics} record how much work an
+ * {@link AbstractCompilationParticipant} does during builds. The statistics
+ * are collected per project and can be queried at any time while builds are
+ * running. All counters are updated without locks.
+ */
+public class CompilationStatistics {
+
+	/**
+	 * The statistics of a single project.
+	 */
+	public static class ProjectStatistics {
+
+		private final String projectName;
+
+		private final AtomicLong fileCount = new AtomicLong();
+		private final AtomicLong batchBuildCount = new AtomicLong();
+		private final AtomicLong incrementalBuildCount = new AtomicLong();
+		private final AtomicLong buildStartingTime = new AtomicLong();
+		private final AtomicLong processedFileCount = new AtomicLong();
+		private final AtomicLong failureCount = new AtomicLong();
+		private final AtomicReference<Throwable> lastFailure = new AtomicReference<Throwable>();
+
+		private final LatencyHistogram buildFinishedLatency = new LatencyHistogram();
+
+		private ProjectStatistics(String projectName) {
+			super();
+			this.projectName = projectName;
+		}
+
+		public String getProjectName() {
+			return projectName;
+		}
+
+		/**
+		 * Returns the number of files passed to
+		 * {@link AbstractCompilationParticipant#buildStarting(CompilationEvent)}.
+		 */
+		public long getFileCount() {
+			return fileCount.get();
+		}
+
+		/**
+		 * Returns the number of calls to
+		 * {@link AbstractCompilationParticipant#buildStarting(BuildContext[], boolean)}
+		 * for batch builds.
+		 */
+		public long getBatchBuildCount() {
+			return batchBuildCount.get();
+		}
+
+		/**
+		 * Returns the number of calls to
+		 * {@link AbstractCompilationParticipant#buildStarting(BuildContext[], boolean)}
+		 * for incremental builds.
+		 */
+		public long getIncrementalBuildCount() {
+			return incrementalBuildCount.get();
+		}
+
+		/**
+		 * Returns the total time (in nanoseconds) spent in
+		 * {@link AbstractCompilationParticipant#buildStarting(CompilationEvent)}.
+		 */
+		public long getBuildStartingTime() {
+			return buildStartingTime.get();
+		}
+
+		/**
+		 * Returns the number of files passed to
+		 * {@link AbstractCompilationParticipant#buildFinished(java.util.Collection)}.
+		 * This number is smaller than {@link #getFileCount()} if files were
+		 * coalesced.
+		 */
+		public long getProcessedFileCount() {
+			return processedFileCount.get();
+		}
+
+		/**
+		 * Returns the durations of the calls to
+		 * {@link AbstractCompilationParticipant#buildFinished(java.util.Collection)}.
+		 */
+		public LatencyHistogram getBuildFinishedLatency() {
+			return buildFinishedLatency;
+		}
+
+		/**
+		 * Returns the number of calls to
+		 * {@link AbstractCompilationParticipant#buildFinished(java.util.Collection)}
+		 * that threw an exception.
+		 */
+		public long getFailureCount() {
+			return failureCount.get();
+		}
+
+		/**
+		 * Returns the exception thrown by the last failed call to
+		 * {@link AbstractCompilationParticipant#buildFinished(java.util.Collection)}
+		 * or <code>null</code> if no call failed.
+		 */
+		public Throwable getLastFailure() {
+			return lastFailure.get();
+		}
+
+		void recordBuildStarting(int files, boolean isBatch, long nanos) {
+			fileCount.addAndGet(files);
+			if (isBatch) {
+				batchBuildCount.incrementAndGet();
+			} else {
+				incrementalBuildCount.incrementAndGet();
+			}
+			buildStartingTime.addAndGet(nanos);
+		}
+
+		void recordBuildFinished(int files, long nanos) {
+			processedFileCount.addAndGet(files);
+			buildFinishedLatency.record(nanos);
+		}
+
+		void recordFailure(Throwable failure) {
+			failureCount.incrementAndGet();
+			lastFailure.set(failure);
+		}
+
+		private void reset() {
+			fileCount.set(0);
+			batchBuildCount.set(0);
+			incrementalBuildCount.set(0);
+			buildStartingTime.set(0);
+			processedFileCount.set(0);
+			failureCount.set(0);
+			lastFailure.set(null);
+			buildFinishedLatency.reset();
+		}
+
+		@Override
+		public String toString() {
+			return projectName + ": files=" + getFileCount() + ", batchBuilds=" + getBatchBuildCount()
+					+ ", incrementalBuilds=" + getIncrementalBuildCount() + ", buildStarting="
+					+ getBuildStartingTime() + "ns, processedFiles=" + getProcessedFileCount() + ", failures="
+					+ getFailureCount() + ", buildFinished=[" + getBuildFinishedLatency() + "]";
+		}
+	}
+
+	private final ConcurrentMap<String, ProjectStatistics> projects = new ConcurrentHashMap<String, ProjectStatistics>();
+
+	/**
+	 * Returns the statistics of the project with the given name or
+	 * <code>null</code> if no files of the project were built so far.
+	 */
+	public ProjectStatistics getProjectStatistics(String projectName) {
+		return projects.get(projectName);
+	}
+
+	/**
+	 * Returns the names of all projects for which statistics were recorded.
+	 */
+	public Set<String> getProjectNames() {
+		return Collections.unmodifiableSet(new TreeSet<String>(projects.keySet()));
+	}
+
+	/**
+	 * Returns the total number of failed calls to
+	 * {@link AbstractCompilationParticipant#buildFinished(java.util.Collection)}
+	 * over all projects.
+	 */
+	public long getFailureCount() {
+		long failureCount = 0;
+		for (ProjectStatistics statistics : projects.values()) {
+			failureCount += statistics.getFailureCount();
+		}
+		return failureCount;
+	}
+
+	/**
+	 * Resets the statistics of all projects.
+	 */
+	public void reset() {
+		for (ProjectStatistics statistics : projects.values()) {
+			statistics.reset();
+		}
+	}
+
+	ProjectStatistics getOrCreate(String projectName) {
+		ProjectStatistics statistics = projects.get(projectName);
+		if (statistics == null) {
+			ProjectStatistics newStatistics = new ProjectStatistics(projectName);
+			statistics = projects.putIfAbsent(projectName, newStatistics);
+			if (statistics == null) {
+				statistics = newStatistics;
+			}
+		}
+		return statistics;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (String projectName : getProjectNames()) {
+			result.append(projects.get(projectName));
+			result.append("\n");
+		}
+		return result.toString();
+	}
+}
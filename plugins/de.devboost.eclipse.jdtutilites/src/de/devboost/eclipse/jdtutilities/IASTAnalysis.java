@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+/**
+ * An {@link IASTAnalysis} is applied to the ASTs of all compilation units of
+ * a project by a {@link ProjectASTAnalyzer}. The analysis produces a partial
+ * result for each unit and the partial results are merged using
+ * {@link #reduce(Object, Object)}.
+ * 
+ * Both methods are called by multiple worker threads concurrently. Thus,
+ * implementations must either be stateless or thread-safe.
+ * 
+ * @param <R> the type of the result of the analysis
+ */
+public interface IASTAnalysis<R> {
+
+	/**
+	 * Analyzes the given AST and returns the partial result for the unit or
+	 * <code>null</code> if the unit does not contribute to the result. The AST
+	 * is released once this method returns. Therefore, the result must not
+	 * refer to AST nodes or bindings.
+	 */
+	public R analyze(ICompilationUnit unit, CompilationUnit ast);
+
+	/**
+	 * Merges the given partial results (which are both not <code>null</code>).
+	 * The order in which partial results are merged is not defined. Thus, the
+	 * operation must be associative and commutative.
+	 */
+	public R reduce(R result1, R result2);
+}
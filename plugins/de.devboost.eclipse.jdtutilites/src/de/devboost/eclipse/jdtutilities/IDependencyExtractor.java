@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * An {@link IDependencyExtractor} determines the outgoing dependencies of a
+ * single Java resource. It is used by the {@link ClassDependencyIndex} to
+ * compute the edges of the class dependency graph.
+ */
+public interface IDependencyExtractor {
+
+	/**
+	 * Returns the paths of all resources that contain classes which are
+	 * referenced by the classes contained in the resource at the given path.
+	 */
+	public Set<String> findReferencesFrom(String path) throws CoreException;
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.Set;
+
+/**
+ * An {@link ITransitiveReferenceVisitor} receives the results of a transitive
+ * reference search (e.g., 
+ * {@link ClassDependencyUtility#findReferencesToTransitively(String, int, ITransitiveReferenceVisitor, org.eclipse.core.runtime.IProgressMonitor)})
+ * level by level while the search is still running.
+ */
+public interface ITransitiveReferenceVisitor {
+
+	/**
+	 * Is called once all paths of a level of the search have been found. The
+	 * start path is reported as level 0, its direct references as level 1 and
+	 * so on. Each path is reported only once.
+	 * 
+	 * @param depth the distance of the paths to the start path
+	 * @param paths the paths that were found at this level
+	 * @return <code>true</code> to continue the search, <code>false</code> to
+	 *         stop it
+	 */
+	public boolean visitLevel(int depth, Set<String> paths);
+}
@@ -16,8 +16,11 @@ package de.devboost.eclipse.jdtutilities;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -28,11 +31,12 @@ import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.core.IAnnotatable;
 import org.eclipse.jdt.core.IAnnotation;
 import org.eclipse.jdt.core.IClassFile;
-import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
@@ -41,8 +45,8 @@ import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 
 public abstract class JDTUtility {
@@ -98,28 +102,18 @@ public abstract class JDTUtility {
 			return Collections.emptyList();
 		}
 
-		List<IPath> sourcePaths = new ArrayList<IPath>();
-		IPackageFragmentRoot[] allPackageFragmentRoots = javaProject.getAllPackageFragmentRoots();
-		for (IPackageFragmentRoot packageFragmentRoot : allPackageFragmentRoots) {
-			if (packageFragmentRoot.getKind() == IPackageFragmentRoot.K_SOURCE) {
-				IPath sourcePath = packageFragmentRoot.getPath();
-				sourcePaths.add(sourcePath);
-			}
-		}
-
-		return sourcePaths;
+		ProjectLayout layout = ProjectLayoutCache.getInstance().getLayout(javaProject);
+		return new ArrayList<IPath>(layout.getSourceFolders());
 	}
 
 	public boolean isInSourceFolder(IProject project, IFile file) throws JavaModelException {
 		IJavaProject javaProject = getJavaProject(project);
-		List<IPath> sourceFolders = getSourceFolders(javaProject);
-		for (IPath sourceFolder : sourceFolders) {
-			if (sourceFolder.matchingFirstSegments(file.getFullPath()) == sourceFolder.segmentCount()) {
-				return true;
-			}
+		if (javaProject == null) {
+			return false;
 		}
 
-		return false;
+		ProjectLayout layout = ProjectLayoutCache.getInstance().getLayout(javaProject);
+		return layout.isInSourceFolder(file.getFullPath());
 	}
 
 	/**
@@ -148,19 +142,23 @@ public abstract class JDTUtility {
 	public IJavaElement getJavaElement(String path) throws JavaModelException {
 
 		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-		IFile file = root.getFile(new Path(path));
+		IPath fullPath = new Path(path);
+		IFile file = root.getFile(fullPath);
 		IJavaProject javaProject = getJavaProject(file);
 		if (javaProject == null) {
 			return null;
 		}
 
-		IPackageFragmentRoot[] roots = javaProject.getPackageFragmentRoots();
-		for (IPackageFragmentRoot packageFragmentRoot : roots) {
-			IPath fragmentPath = packageFragmentRoot.getPath();
-			String fragmentPathString = fragmentPath.toString();
-			if (path.startsWith(fragmentPathString + "/")) {
+		// the layout contains the package fragment roots of the project in a
+		// trie, which allows to find the roots that contain the resource
+		// without iterating over all roots
+		ProjectLayout layout = ProjectLayoutCache.getInstance().getLayout(javaProject);
+		List<ProjectLayout.RootEntry> containingRoots = layout.getContainingRoots(fullPath);
+		for (ProjectLayout.RootEntry rootEntry : containingRoots) {
+			String fragmentPathPrefix = rootEntry.getPathPrefix();
+			if (path.startsWith(fragmentPathPrefix)) {
 				// resource is contained in this package fragment root
-				String classPathRelativePath = path.substring(fragmentPathString.length() + 1);
+				String classPathRelativePath = path.substring(fragmentPathPrefix.length());
 				IJavaElement element = javaProject.findElement(new Path(classPathRelativePath));
 				if (element != null) {
 					return element;
@@ -200,15 +198,37 @@ public abstract class JDTUtility {
 	 * Returns the name of the Java package that contains the given file.
 	 */
 	public String getPackageName(IFile file) {
-		String packageName = new String();
+		// the package fragment roots of the project are cached in its layout,
+		// which allows to determine the package name of files that are
+		// located in a root without asking the Java model
+		IPath path = file.getFullPath();
+		ProjectLayoutCache layoutCache = ProjectLayoutCache.getInstance();
+		ProjectLayout layout = layoutCache.getCachedLayout(path.segment(0));
+		if (layout == null) {
+			IJavaProject javaProject = getJavaProject(file);
+			if (javaProject != null) {
+				try {
+					layout = layoutCache.getLayout(javaProject);
+				} catch (JavaModelException e) {
+					// use the Java model below
+				}
+			}
+		}
+		if (layout != null) {
+			String packageName = layout.getPackageName(path);
+			if (packageName != null) {
+				return packageName;
+			}
+		}
+
 		IContainer parent = file.getParent();
 		List<String> packages = new ArrayList<String>();
 		while (!isSourceFolder(parent)) {
-			packages.add(0, parent.getName());
+			packages.add(parent.getName());
 			parent = parent.getParent();
 		}
-		packageName = explode(packages, ".");
-		return packageName;
+		Collections.reverse(packages);
+		return explode(packages, ".");
 	}
 
 	/**
@@ -240,19 +260,9 @@ public abstract class JDTUtility {
 		}
 
 		try {
-			// Handle projects that have multiple output locations.
-			IClasspathEntry[] classpathEntries = javaProject.getRawClasspath();
-			for (IClasspathEntry classpathEntry : classpathEntries) {
-				IPath outputLocation = classpathEntry.getOutputLocation();
-				if (isContained(outputLocation, platformURI)) {
-					return true;
-				}
-			}
-
-			IPath outputLocation = javaProject.getOutputLocation();
-			if (isContained(outputLocation, platformURI)) {
-				return true;
-			}
+			// The layout handles projects that have multiple output locations.
+			ProjectLayout layout = ProjectLayoutCache.getInstance().getLayout(javaProject);
+			return layout.isInOutputFolder(platformURI);
 		} catch (JavaModelException e) {
 			logWarning("Can't determine output location for project " + javaProject.getElementName(), e);
 		}
@@ -261,32 +271,8 @@ public abstract class JDTUtility {
 	}
 
 	/**
-	 * Checks whether the given EMF platform URI is located in the given output folder.
-	 */
-	private boolean isContained(IPath outputLocation, String platformURI) {
-		if (outputLocation == null) {
-			return false;
-		}
-
-		String outputPath = outputLocation.toString();
-		// We add a slash to the end of the path to make sure that the
-		// output directory (e.g., 'bin') is not only a prefix of the
-		// corresponding fragments in the URI (e.g., 'bind-src'), but really
-		// refers to the same directory.
-		if (!outputPath.endsWith("/")) {
-			outputPath = outputPath + "/";
-		}
-
-		if (platformURI.startsWith(outputPath)) {
-			return true;
-		}
-
-		return false;
-	}
-
-	/**
-	 * Checks whether the given path is the output path of the given project. If the project is not a Java project,
-	 * <code>false</code> is returned.
+	 * Checks whether the given path is an output path of the given project (i.e., the default output location or the
+	 * output location of a source folder). If the project is not a Java project, <code>false</code> is returned.
 	 */
 	public boolean isOutputFolder(IProject project, IPath path) {
 		IJavaProject javaProject = getJavaProject(project);
@@ -294,16 +280,10 @@ public abstract class JDTUtility {
 			return false;
 		}
 
-		// FIXME Handle projects that have multiple output locations.
-
 		try {
-			IPath outputLocation = javaProject.getOutputLocation();
-			if (outputLocation == null) {
-				return false;
-			}
-			if (outputLocation.equals(path)) {
-				return true;
-			}
+			// The layout handles projects that have multiple output locations.
+			ProjectLayout layout = ProjectLayoutCache.getInstance().getLayout(javaProject);
+			return layout.isOutputFolder(path);
 		} catch (JavaModelException e) {
 			logWarning("Can't determine output location for project " + javaProject.getElementName(), e);
 		}
@@ -331,7 +311,8 @@ public abstract class JDTUtility {
 	}
 
 	/**
-	 * Returns the value of the given annotation property. If no annotation or property is found, null is returned.
+	 * Returns the value of the given annotation property. If no annotation or property is found, null is returned. To
+	 * look up annotations of many types, use an {@link AnnotationIndex} instead.
 	 */
 	public Object getAnnotationValue(IAnnotatable annotable, String simpleAnnotationName, String annotationProperty) {
 		IAnnotation annotation = annotable.getAnnotation(simpleAnnotationName);
@@ -401,10 +382,108 @@ public abstract class JDTUtility {
 	}
 
 	public CompilationUnit parse(ICompilationUnit unit) {
-		ASTParser parser = ASTParser.newParser(AST.JLS4);
-		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		return parse(unit, ParseOptions.DEFAULT);
+	}
+
+	/**
+	 * Parses the given compilation unit using the given options (e.g., without bindings or with a focal position).
+	 */
+	public CompilationUnit parse(ICompilationUnit unit, ParseOptions options) {
+		ASTParser parser = options.createParser(false);
 		parser.setSource(unit);
-		parser.setResolveBindings(true);
 		return (CompilationUnit) parser.createAST(null);
 	}
+
+	/**
+	 * Returns the AST (with bindings) of the given compilation unit. In contrast to {@link #parse(ICompilationUnit)}, the
+	 * AST is taken from a cache if the unit was parsed before and neither the unit nor the Java model have changed
+	 * since. Clients must not modify the returned AST.
+	 * <p>
+	 * The returned AST is shared with all other clients of the cache. Since ASTs (in particular, their binding
+	 * resolution) are not thread-safe, an AST obtained from this method must not be shared across threads. Clients
+	 * that work on multiple threads must either synchronize on the returned AST or use {@link #parse(ICompilationUnit)}
+	 * to obtain an AST of their own.
+	 */
+	public CompilationUnit getAST(ICompilationUnit unit) {
+		return getAST(unit, ParseOptions.DEFAULT);
+	}
+
+	/**
+	 * Returns the AST of the given compilation unit that is parsed using the given options. The AST is taken from a cache
+	 * if the unit was parsed with the same options before and has not changed since. Clients must not modify the returned
+	 * AST and must not share it across threads (see {@link #getAST(ICompilationUnit)}).
+	 */
+	public CompilationUnit getAST(ICompilationUnit unit, ParseOptions options) {
+		ASTCache cache = ASTCache.getInstance();
+		CompilationUnit ast = cache.get(unit, options);
+		if (ast != null) {
+			return ast;
+		}
+		long generation = cache.getGeneration();
+		long modificationStamp = cache.getModificationStamp(unit);
+		ast = parse(unit, options);
+		cache.put(unit, options, generation, modificationStamp, ast);
+		return ast;
+	}
+
+	/**
+	 * Parses the given compilation units (with bindings) and passes each AST to the given requestor as soon as it is
+	 * available. The units are parsed in one batch per Java project. Thus, the bindings of all units of a project are
+	 * resolved in a shared environment, which is much faster than parsing the units one by one and allows to compare
+	 * bindings by identity. The ASTs are added to the cache used by {@link #getAST(ICompilationUnit)}. Note that each
+	 * cached AST keeps the binding environment of its whole batch alive until the cache entry is discarded or the
+	 * garbage collector clears it.
+	 */
+	public void parse(Collection<ICompilationUnit> units, ASTRequestor requestor, IProgressMonitor monitor) {
+		parse(units, ParseOptions.DEFAULT, requestor, monitor);
+	}
+
+	/**
+	 * Parses the given compilation units in batches per Java project using the given options (see
+	 * {@link #parse(Collection, ASTRequestor, IProgressMonitor)}). The focal position of the options is ignored.
+	 */
+	public void parse(Collection<ICompilationUnit> units, final ParseOptions options, final ASTRequestor requestor,
+			IProgressMonitor monitor) {
+		Map<IJavaProject, List<ICompilationUnit>> projectToUnits = new LinkedHashMap<IJavaProject, List<ICompilationUnit>>();
+		for (ICompilationUnit unit : units) {
+			IJavaProject javaProject = unit.getJavaProject();
+			List<ICompilationUnit> unitsOfProject = projectToUnits.get(javaProject);
+			if (unitsOfProject == null) {
+				unitsOfProject = new ArrayList<ICompilationUnit>();
+				projectToUnits.put(javaProject, unitsOfProject);
+			}
+			unitsOfProject.add(unit);
+		}
+
+		final ASTCache cache = ASTCache.getInstance();
+		// the focal position is not applied to batches, so the ASTs are stored
+		// under the options that were actually used to parse them
+		final ParseOptions cacheOptions = options.withFocalPosition(-1);
+		SubMonitor subMonitor = SubMonitor.convert(monitor, units.size());
+		for (Map.Entry<IJavaProject, List<ICompilationUnit>> entry : projectToUnits.entrySet()) {
+			List<ICompilationUnit> unitsOfProject = entry.getValue();
+			ICompilationUnit[] unitArray = unitsOfProject.toArray(new ICompilationUnit[unitsOfProject.size()]);
+			// the generation and the stamps must be obtained before the units are
+			// parsed
+			final long generation = cache.getGeneration();
+			final Map<ICompilationUnit, Long> modificationStamps = new HashMap<ICompilationUnit, Long>();
+			for (ICompilationUnit unit : unitArray) {
+				modificationStamps.put(unit, cache.getModificationStamp(unit));
+			}
+
+			ASTParser parser = options.createParser(true);
+			parser.setProject(entry.getKey());
+			parser.createASTs(unitArray, new String[0], new ASTRequestor() {
+
+				@Override
+				public void acceptAST(ICompilationUnit source, CompilationUnit ast) {
+					Long modificationStamp = modificationStamps.get(source);
+					if (modificationStamp != null) {
+						cache.put(source, cacheOptions, generation, modificationStamp, ast);
+					}
+					requestor.acceptAST(source, ast);
+				}
+			}, subMonitor.newChild(unitArray.length));
+		}
+	}
 }
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@link LatencyHistogram} records durations (in nanoseconds) in buckets
+ * whose bounds are powers of two. Bucket <code>i</code> contains the durations
+ * <code>d</code> with <code>2^(i-1) &lt;= d &lt; 2^i</code> (bucket 0 contains
+ * durations of zero). Thus, recording a duration does neither allocate memory
+ * nor take a lock and percentiles are accurate up to a factor of two.
+ */
+public final class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong maximum = new AtomicLong();
+
+	LatencyHistogram() {
+		super();
+	}
+
+	void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(getBucket(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		long currentMaximum = maximum.get();
+		while (nanos > currentMaximum && !maximum.compareAndSet(currentMaximum, nanos)) {
+			currentMaximum = maximum.get();
+		}
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		maximum.set(0);
+	}
+
+	private static int getBucket(long nanos) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	/**
+	 * Returns the number of recorded durations.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the sum of all recorded durations (in nanoseconds).
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * Returns the longest recorded duration (in nanoseconds).
+	 */
+	public long getMaximum() {
+		return maximum.get();
+	}
+
+	/**
+	 * Returns the number of buckets.
+	 */
+	public int getBucketCount() {
+		return BUCKETS;
+	}
+
+	/**
+	 * Returns the number of durations recorded in the given bucket.
+	 */
+	public long getBucketValue(int bucket) {
+		return buckets.get(bucket);
+	}
+
+	/**
+	 * Returns the exclusive upper bound (in nanoseconds) of the durations in
+	 * the given bucket.
+	 */
+	public long getBucketUpperBound(int bucket) {
+		if (bucket >= BUCKETS - 1) {
+			return Long.MAX_VALUE;
+		}
+		return 1L << bucket;
+	}
+
+	/**
+	 * Returns an upper bound for the given percentile (between 0 and 100) of
+	 * the recorded durations (in nanoseconds). The bound exceeds the actual
+	 * percentile by at most a factor of two. If no duration was recorded, zero
+	 * is returned.
+	 */
+	public long getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+		}
+		long[] values = new long[BUCKETS];
+		long recorded = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			values[i] = buckets.get(i);
+			recorded += values[i];
+		}
+		if (recorded == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(recorded * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += values[i];
+			if (seen >= rank) {
+				// the maximum is a tighter bound for the last bucket
+				return Math.min(getBucketUpperBound(i), getMaximum());
+			}
+		}
+		return getMaximum();
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", total=" + getTotal() + "ns, p50<=" + getPercentile(50) + "ns, p99<="
+				+ getPercentile(99) + "ns, max=" + getMaximum() + "ns";
+	}
+}
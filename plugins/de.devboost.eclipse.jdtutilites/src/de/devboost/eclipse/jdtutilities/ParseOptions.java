@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+
+/**
+ * The {@link ParseOptions} determine how {@link JDTUtility} parses
+ * compilation units. Options are immutable. Modified options are obtained
+ * from the <code>with...()</code> methods, e.g.,
+ * <code>ParseOptions.DEFAULT.withResolveBindings(false)</code>.
+ * 
+ * Resolving bindings is by far the most expensive part of parsing. Clients
+ * that need only the structure of the declarations should disable bindings
+ * and ignore the method bodies.
+ */
+public final class ParseOptions {
+
+	/**
+	 * The options used by {@link JDTUtility#parse(org.eclipse.jdt.core.ICompilationUnit)}
+	 * (JLS4 with bindings).
+	 */
+	public static final ParseOptions DEFAULT = new ParseOptions(AST.JLS4, true, false, false, -1);
+
+	private static final int LATEST_API_LEVEL = findLatestAPILevel();
+
+	private final int apiLevel;
+	private final boolean resolveBindings;
+	private final boolean ignoreMethodBodies;
+	private final boolean statementsRecovery;
+	private final int focalPosition;
+
+	private ParseOptions(int apiLevel, boolean resolveBindings, boolean ignoreMethodBodies,
+			boolean statementsRecovery, int focalPosition) {
+		super();
+		this.apiLevel = apiLevel;
+		this.resolveBindings = resolveBindings;
+		this.ignoreMethodBodies = ignoreMethodBodies;
+		this.statementsRecovery = statementsRecovery;
+		this.focalPosition = focalPosition;
+	}
+
+	/**
+	 * Returns the latest JLS API level that is supported by the running JDT.
+	 */
+	public static int getLatestAPILevel() {
+		return LATEST_API_LEVEL;
+	}
+
+	private static int findLatestAPILevel() {
+		try {
+			// available since JDT 3.20
+			Method method = AST.class.getMethod("getJLSLatest");
+			return (Integer) method.invoke(null);
+		} catch (Exception e) {
+			// fall back to the constants declared by AST
+		}
+		int latest = AST.JLS4;
+		for (Field field : AST.class.getFields()) {
+			String name = field.getName();
+			if (!name.matches("JLS[0-9]+") || !Modifier.isStatic(field.getModifiers())
+					|| field.getType() != int.class) {
+				continue;
+			}
+			try {
+				latest = Math.max(latest, field.getInt(null));
+			} catch (IllegalAccessException e) {
+				// ignore
+			}
+		}
+		return latest;
+	}
+
+	public int getAPILevel() {
+		return apiLevel;
+	}
+
+	public boolean isResolveBindings() {
+		return resolveBindings;
+	}
+
+	public boolean isIgnoreMethodBodies() {
+		return ignoreMethodBodies;
+	}
+
+	public boolean isStatementsRecovery() {
+		return statementsRecovery;
+	}
+
+	/**
+	 * Returns the focal position or -1 if no focal position is set.
+	 */
+	public int getFocalPosition() {
+		return focalPosition;
+	}
+
+	/**
+	 * Returns options that use the given JLS API level (e.g.,
+	 * {@link #getLatestAPILevel()}).
+	 */
+	public ParseOptions withAPILevel(int apiLevel) {
+		return new ParseOptions(apiLevel, resolveBindings, ignoreMethodBodies, statementsRecovery, focalPosition);
+	}
+
+	/**
+	 * Returns options that resolve bindings or not.
+	 */
+	public ParseOptions withResolveBindings(boolean resolveBindings) {
+		return new ParseOptions(apiLevel, resolveBindings, ignoreMethodBodies, statementsRecovery, focalPosition);
+	}
+
+	/**
+	 * Returns options that skip the bodies of all methods or not. Method
+	 * bodies are never ignored for the method that contains the focal
+	 * position.
+	 */
+	public ParseOptions withIgnoreMethodBodies(boolean ignoreMethodBodies) {
+		return new ParseOptions(apiLevel, resolveBindings, ignoreMethodBodies, statementsRecovery, focalPosition);
+	}
+
+	/**
+	 * Returns options that recover malformed statements or not.
+	 */
+	public ParseOptions withStatementsRecovery(boolean statementsRecovery) {
+		return new ParseOptions(apiLevel, resolveBindings, ignoreMethodBodies, statementsRecovery, focalPosition);
+	}
+
+	/**
+	 * Returns options that parse only the body of the method that contains
+	 * the given position (i.e., the bodies of all other methods are skipped).
+	 * Use -1 to parse all method bodies. A focal position applies to single
+	 * units only and is ignored for batch parsing.
+	 */
+	public ParseOptions withFocalPosition(int focalPosition) {
+		return new ParseOptions(apiLevel, resolveBindings, ignoreMethodBodies, statementsRecovery,
+				focalPosition < 0 ? -1 : focalPosition);
+	}
+
+	/**
+	 * Creates a parser for compilation units that is configured with these
+	 * options.
+	 */
+	ASTParser createParser(boolean batch) {
+		ASTParser parser = ASTParser.newParser(apiLevel);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		parser.setResolveBindings(resolveBindings);
+		parser.setStatementsRecovery(statementsRecovery);
+		if (ignoreMethodBodies) {
+			parser.setIgnoreMethodBodies(true);
+		}
+		if (focalPosition >= 0 && !batch) {
+			parser.setFocalPosition(focalPosition);
+		}
+		return parser;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = apiLevel;
+		result = 31 * result + (resolveBindings ? 1 : 0);
+		result = 31 * result + (ignoreMethodBodies ? 1 : 0);
+		result = 31 * result + (statementsRecovery ? 1 : 0);
+		result = 31 * result + focalPosition;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ParseOptions)) {
+			return false;
+		}
+		ParseOptions other = (ParseOptions) obj;
+		return apiLevel == other.apiLevel && resolveBindings == other.resolveBindings
+				&& ignoreMethodBodies == other.ignoreMethodBodies && statementsRecovery == other.statementsRecovery
+				&& focalPosition == other.focalPosition;
+	}
+
+	@Override
+	public String toString() {
+		return "ParseOptions [apiLevel=" + apiLevel + ", resolveBindings=" + resolveBindings
+				+ ", ignoreMethodBodies=" + ignoreMethodBodies + ", statementsRecovery=" + statementsRecovery
+				+ ", focalPosition=" + focalPosition + "]";
+	}
+}
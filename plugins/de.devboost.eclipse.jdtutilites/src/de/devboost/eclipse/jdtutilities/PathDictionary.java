@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.Arrays;
+
+/**
+ * The {@link PathDictionary} assigns a unique, dense integer ID to each path.
+ * It is used to store sets of paths compactly (see {@link PathSet}) and to
+ * make sure that each path string is kept in memory only once. IDs are never
+ * reused, i.e., the dictionary only grows. Therefore, dictionaries are
+ * scoped to the data structure that uses them (e.g., a
+ * {@link ClassDependencyIndex} or the result of a single transitive search)
+ * instead of being shared globally.
+ * 
+ * The paths are mapped to their IDs by an open addressing hash table that
+ * stores the IDs as primitive integers. Thus, the dictionary needs no objects
+ * except the path strings and two arrays.
+ * 
+ * This class is not thread-safe. Use {@link #synchronizedDictionary()} to
+ * obtain a dictionary that can be shared by multiple threads.
+ */
+public class PathDictionary {
+
+	/**
+	 * A {@link PathDictionary} whose methods are synchronized.
+	 */
+	private static class SynchronizedPathDictionary extends PathDictionary {
+
+		@Override
+		public synchronized int getID(String path) {
+			return super.getID(path);
+		}
+
+		@Override
+		public synchronized int lookup(String path) {
+			return super.lookup(path);
+		}
+
+		@Override
+		public synchronized String getPath(int id) {
+			return super.getPath(id);
+		}
+
+		@Override
+		public synchronized String intern(String path) {
+			return super.intern(path);
+		}
+
+		@Override
+		public synchronized int size() {
+			return super.size();
+		}
+	}
+
+	private static final int NO_ID = -1;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The hash table that contains the ID of each path at the slot of the
+	 * path (or {@link #NO_ID} for empty slots). The length is a power of two
+	 * and the table is kept at most half full.
+	 */
+	private int[] table;
+
+	private String[] paths;
+	private int size;
+
+	public PathDictionary() {
+		super();
+		table = new int[INITIAL_CAPACITY * 2];
+		Arrays.fill(table, NO_ID);
+		paths = new String[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns a new, empty dictionary that can be used by multiple threads.
+	 */
+	public static PathDictionary synchronizedDictionary() {
+		return new SynchronizedPathDictionary();
+	}
+
+	/**
+	 * Returns the ID of the given path. If the path is not contained in the
+	 * dictionary yet, it is added.
+	 */
+	public int getID(String path) {
+		int slot = findSlot(path);
+		int id = table[slot];
+		if (id != NO_ID) {
+			return id;
+		}
+
+		if (size == paths.length) {
+			String[] newPaths = new String[paths.length * 2];
+			System.arraycopy(paths, 0, newPaths, 0, size);
+			paths = newPaths;
+		}
+		int newID = size++;
+		paths[newID] = path;
+		table[slot] = newID;
+		if (size * 2 > table.length) {
+			rehash(table.length * 2);
+		}
+		return newID;
+	}
+
+	/**
+	 * Returns the ID of the given path or -1 if the path is not contained in
+	 * the dictionary.
+	 */
+	public int lookup(String path) {
+		return table[findSlot(path)];
+	}
+
+	/**
+	 * Returns the path with the given ID.
+	 */
+	public String getPath(int id) {
+		if (id < 0 || id >= size) {
+			throw new IllegalArgumentException("Unknown path ID " + id);
+		}
+		return paths[id];
+	}
+
+	/**
+	 * Returns the canonical instance of the given path. If the path is not 
+	 * contained in the dictionary yet, it is added.
+	 */
+	public String intern(String path) {
+		return paths[getID(path)];
+	}
+
+	/**
+	 * Returns the number of paths in this dictionary. All IDs are smaller than
+	 * this number.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the slot that contains the ID of the given path or the empty
+	 * slot where it must be stored (linear probing).
+	 */
+	private int findSlot(String path) {
+		int mask = table.length - 1;
+		int slot = hash(path) & mask;
+		while (true) {
+			int id = table[slot];
+			if (id == NO_ID || paths[id].equals(path)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void rehash(int newLength) {
+		table = new int[newLength];
+		Arrays.fill(table, NO_ID);
+		int mask = newLength - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = hash(paths[id]) & mask;
+			while (table[slot] != NO_ID) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = id;
+		}
+	}
+
+	/**
+	 * Spreads the hash code of the given path, because paths often share long
+	 * prefixes and only the lower bits are used to select a slot.
+	 */
+	private static int hash(String path) {
+		int hash = path.hashCode() * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
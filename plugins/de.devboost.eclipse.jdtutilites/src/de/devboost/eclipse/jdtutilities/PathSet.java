@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link PathSet} is a set of paths that stores the IDs of the paths (as
+ * assigned by a {@link PathDictionary}). The path strings are only looked up
+ * when the set is iterated. The paths are iterated in the order of their IDs.
+ * 
+ * Small sets store the IDs in a sorted array. A set switches to a
+ * {@link BitSet} as soon as the bit set would take less memory than the
+ * array, i.e., if the set contains more than one in 32 paths of the
+ * dictionary. Thus, a set with a few paths stays small even if the
+ * dictionary contains many paths.
+ * 
+ * This class is not thread-safe.
+ */
+public class PathSet extends AbstractSet<String> {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	/**
+	 * The minimum number of IDs before a set switches to a {@link BitSet}.
+	 */
+	private static final int MINIMUM_DENSE_SIZE = 64;
+
+	private final PathDictionary dictionary;
+
+	/**
+	 * The sorted IDs of a sparse set or <code>null</code> if the set is
+	 * dense.
+	 */
+	private int[] sortedIDs;
+
+	/**
+	 * The IDs of a dense set or <code>null</code> if the set is sparse.
+	 */
+	private BitSet bits;
+
+	private int size;
+
+	public PathSet(PathDictionary dictionary) {
+		super();
+		this.dictionary = dictionary;
+		this.sortedIDs = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Creates a set that contains the given IDs. The array is sorted and used
+	 * by the set, i.e., it must not be modified afterwards.
+	 */
+	PathSet(PathDictionary dictionary, int[] ids) {
+		super();
+		this.dictionary = dictionary;
+		Arrays.sort(ids);
+		int count = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (count == 0 || ids[count - 1] != ids[i]) {
+				ids[count++] = ids[i];
+			}
+		}
+		this.sortedIDs = ids;
+		this.size = count;
+		if (count >= MINIMUM_DENSE_SIZE) {
+			switchToBitsIfDense();
+		}
+	}
+
+	public PathDictionary getDictionary() {
+		return dictionary;
+	}
+
+	@Override
+	public boolean add(String path) {
+		return addID(dictionary.getID(path));
+	}
+
+	/**
+	 * Adds the path with the given ID to this set. Adding IDs in ascending
+	 * order takes constant time.
+	 * 
+	 * @return <code>true</code> if the path was not contained in the set
+	 */
+	public boolean addID(int id) {
+		if (bits != null) {
+			if (bits.get(id)) {
+				return false;
+			}
+			bits.set(id);
+			size++;
+			return true;
+		}
+
+		int index;
+		if (size == 0 || sortedIDs[size - 1] < id) {
+			index = size;
+		} else {
+			index = Arrays.binarySearch(sortedIDs, 0, size, id);
+			if (index >= 0) {
+				return false;
+			}
+			index = -index - 1;
+		}
+		if (size == sortedIDs.length) {
+			sortedIDs = Arrays.copyOf(sortedIDs, Math.max(INITIAL_CAPACITY, size * 2));
+		}
+		System.arraycopy(sortedIDs, index, sortedIDs, index + 1, size - index);
+		sortedIDs[index] = id;
+		size++;
+		if (size >= MINIMUM_DENSE_SIZE && size == sortedIDs.length) {
+			// the density is only checked when the array must grow anyway
+			switchToBitsIfDense();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the path with the given ID is contained in
+	 * this set.
+	 */
+	public boolean containsID(int id) {
+		if (id < 0) {
+			return false;
+		}
+		if (bits != null) {
+			return bits.get(id);
+		}
+		return Arrays.binarySearch(sortedIDs, 0, size, id) >= 0;
+	}
+
+	@Override
+	public boolean contains(Object object) {
+		if (!(object instanceof String)) {
+			return false;
+		}
+		return containsID(dictionary.lookup((String) object));
+	}
+
+	@Override
+	public boolean remove(Object object) {
+		if (!(object instanceof String)) {
+			return false;
+		}
+		return removeID(dictionary.lookup((String) object));
+	}
+
+	private boolean removeID(int id) {
+		if (id < 0) {
+			return false;
+		}
+		if (bits != null) {
+			if (!bits.get(id)) {
+				return false;
+			}
+			bits.clear(id);
+			size--;
+			return true;
+		}
+		int index = Arrays.binarySearch(sortedIDs, 0, size, id);
+		if (index < 0) {
+			return false;
+		}
+		System.arraycopy(sortedIDs, index + 1, sortedIDs, index, size - index - 1);
+		size--;
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		bits = null;
+		sortedIDs = new int[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the IDs of all paths in this set in ascending order.
+	 */
+	public int[] toIDArray() {
+		if (bits == null) {
+			return Arrays.copyOf(sortedIDs, size);
+		}
+		int[] result = new int[size];
+		int index = 0;
+		for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+			result[index++] = id;
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces the sorted array by a {@link BitSet} if the bit set takes less
+	 * memory.
+	 */
+	private void switchToBitsIfDense() {
+		int maximumID = sortedIDs[size - 1];
+		// a bit set needs one bit per ID, the array 32 bits per element
+		if (maximumID / 32 >= size) {
+			return;
+		}
+		bits = new BitSet(maximumID + 1);
+		for (int i = 0; i < size; i++) {
+			bits.set(sortedIDs[i]);
+		}
+		sortedIDs = null;
+	}
+
+	/**
+	 * Returns the ID that follows the given ID in this set or -1 if there is
+	 * no such ID. Pass -1 to obtain the first ID.
+	 */
+	private int nextID(int id) {
+		if (bits != null) {
+			return bits.nextSetBit(id + 1);
+		}
+		int index = Arrays.binarySearch(sortedIDs, 0, size, id + 1);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return index < size ? sortedIDs[index] : -1;
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			
+			private int nextID = nextID(-1);
+			private int lastID = -1;
+
+			@Override
+			public boolean hasNext() {
+				return nextID >= 0;
+			}
+
+			@Override
+			public String next() {
+				if (nextID < 0) {
+					throw new NoSuchElementException();
+				}
+				lastID = nextID;
+				nextID = nextID(nextID);
+				return dictionary.getPath(lastID);
+			}
+
+			@Override
+			public void remove() {
+				if (lastID < 0) {
+					throw new IllegalStateException();
+				}
+				removeID(lastID);
+				lastID = -1;
+			}
+		};
+	}
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * A {@link PathTrie} maps workspace paths to values and allows to look up all
+ * values whose paths are prefixes of a given path. Lookups walk the segments
+ * of the given path and do not allocate any objects.
+ */
+final class PathTrie<V> {
+
+	private static class Node<V> {
+		
+		private Map<String, Node<V>> children;
+		private V value;
+
+		private Node<V> getChild(String segment) {
+			if (children == null) {
+				return null;
+			}
+			return children.get(segment);
+		}
+
+		private Node<V> getOrCreateChild(String segment) {
+			if (children == null) {
+				children = new HashMap<String, Node<V>>(4);
+			}
+			Node<V> child = children.get(segment);
+			if (child == null) {
+				child = new Node<V>();
+				children.put(segment, child);
+			}
+			return child;
+		}
+	}
+
+	private final Node<V> root = new Node<V>();
+
+	/**
+	 * Stores the given value for the given path. If a value is already stored
+	 * for the path, it is replaced.
+	 */
+	public void put(IPath path, V value) {
+		Node<V> node = root;
+		int segmentCount = path.segmentCount();
+		for (int i = 0; i < segmentCount; i++) {
+			node = node.getOrCreateChild(path.segment(i));
+		}
+		node.value = value;
+	}
+
+	/**
+	 * Returns the value that is stored for exactly the given path or
+	 * <code>null</code> if there is no such value.
+	 */
+	public V get(IPath path) {
+		return get(path, path.segmentCount());
+	}
+
+	/**
+	 * Returns the value that is stored for exactly the prefix of the given
+	 * path that consists of the given number of segments or <code>null</code>
+	 * if there is no such value.
+	 */
+	public V get(IPath path, int segmentCount) {
+		Node<V> node = root;
+		for (int i = 0; i < segmentCount && node != null; i++) {
+			node = node.getChild(path.segment(i));
+		}
+		if (node == null) {
+			return null;
+		}
+		return node.value;
+	}
+
+	/**
+	 * Returns the value that is stored for the longest path that is a prefix
+	 * of (or equal to) the given path or <code>null</code> if there is no such
+	 * value.
+	 */
+	public V getLongestPrefixMatch(IPath path) {
+		return getLongestPrefixMatch(path, path.segmentCount());
+	}
+
+	/**
+	 * Returns the value that is stored for the longest path that is a prefix
+	 * of the given path and has at most <code>maxSegments</code> segments.
+	 */
+	public V getLongestPrefixMatch(IPath path, int maxSegments) {
+		Node<V> node = root;
+		V match = root.value;
+		int segmentCount = Math.min(maxSegments, path.segmentCount());
+		for (int i = 0; i < segmentCount; i++) {
+			node = node.getChild(path.segment(i));
+			if (node == null) {
+				break;
+			}
+			if (node.value != null) {
+				match = node.value;
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * Adds all values that are stored for prefixes of the given path to the
+	 * given list, starting with the shortest prefix. If <code>strict</code> is
+	 * <code>true</code>, the value stored for the path itself is not added.
+	 */
+	public void collectPrefixMatches(IPath path, boolean strict, List<V> result) {
+		Node<V> node = root;
+		int segmentCount = path.segmentCount();
+		if (strict) {
+			segmentCount--;
+		}
+		for (int i = 0; i < segmentCount; i++) {
+			node = node.getChild(path.segment(i));
+			if (node == null) {
+				return;
+			}
+			if (node.value != null) {
+				result.add(node.value);
+			}
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * The {@link ProblemMarkerCache} holds the maximum severity of the problem
+ * markers of each project that was queried. The severity is determined using
+ * {@link IResource#findMaxProblemSeverity(String, boolean, int)}, which does
+ * not create marker objects. A cached severity is discarded as soon as a
+ * resource delta reports a change of the problem markers of the project or
+ * the project is opened, closed or removed. The cache is shared by all
+ * {@link ProjectUtility} instances and starts listening to resource changes
+ * when it is used for the first time.
+ */
+final class ProblemMarkerCache implements IResourceChangeListener {
+
+	private static ProblemMarkerCache instance;
+
+	private final Map<String, Integer> severities = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * Is incremented on every invalidation. Severities that were computed
+	 * while an invalidation happened are not stored.
+	 */
+	private long generation;
+
+	public static synchronized ProblemMarkerCache getInstance() {
+		if (instance == null) {
+			instance = new ProblemMarkerCache();
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(instance,
+					IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.POST_BUILD);
+		}
+		return instance;
+	}
+
+	private ProblemMarkerCache() {
+		super();
+	}
+
+	/**
+	 * Returns the maximum severity of the problem markers of the given
+	 * project or -1 if the project has no problem markers.
+	 */
+	public int getMaxProblemSeverity(IProject project) throws CoreException {
+		String projectName = project.getName();
+		Integer severity = severities.get(projectName);
+		if (severity != null) {
+			return severity.intValue();
+		}
+
+		long generationBefore = getGeneration();
+		int maxSeverity = project.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE);
+		synchronized (this) {
+			if (generation == generationBefore) {
+				severities.put(projectName, Integer.valueOf(maxSeverity));
+			}
+		}
+		return maxSeverity;
+	}
+
+	private synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Discards the cached severity of the project with the given name.
+	 */
+	public synchronized void invalidate(String projectName) {
+		generation++;
+		severities.remove(projectName);
+	}
+
+	@Override
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		for (IMarkerDelta markerDelta : event.findMarkerDeltas(IMarker.PROBLEM, true)) {
+			IProject project = markerDelta.getResource().getProject();
+			if (project != null) {
+				invalidate(project.getName());
+			}
+		}
+		// added, removed, opened and closed projects
+		for (IResourceDelta projectDelta : delta.getAffectedChildren()) {
+			if (projectDelta.getKind() != IResourceDelta.CHANGED
+					|| (projectDelta.getFlags() & IResourceDelta.OPEN) != 0) {
+				invalidate(projectDelta.getResource().getName());
+			}
+		}
+	}
+}
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+/**
+ * The {@link ProjectASTAnalyzer} applies an {@link IASTAnalysis} to all
+ * compilation units in the source folders of a Java project. The units are
+ * split into partitions of {@link #getPartitionSize()} units. A pool of
+ * {@link #getParallelism()} workers takes the partitions one by one and
+ * parses each partition in one batch with its own {@link ASTParser}. Each AST
+ * is analyzed as soon as it is available and released afterwards. Thus, a
+ * worker holds at most the binding environment of one partition in memory.
+ * 
+ * The workers merge the results of their units and the results of the
+ * workers are merged once all partitions are analyzed.
+ */
+public class ProjectASTAnalyzer {
+
+	private static final int DEFAULT_PARTITION_SIZE = 50;
+
+	/**
+	 * The interval (in milliseconds) in which the progress monitor is updated
+	 * and checked for cancellation.
+	 */
+	private static final long PROGRESS_INTERVAL = 100;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int partitionSize = DEFAULT_PARTITION_SIZE;
+	private ParseOptions parseOptions = ParseOptions.DEFAULT;
+
+	/**
+	 * A {@link Worker} analyzes partitions until no partition is left or the
+	 * analysis is canceled.
+	 */
+	private class Worker<R> implements Callable<R> {
+
+		private final IJavaProject javaProject;
+		private final IASTAnalysis<R> analysis;
+		private final Queue<ICompilationUnit[]> partitions;
+		private final AtomicInteger analyzedUnits;
+		private final IProgressMonitor workerMonitor;
+
+		/**
+		 * The monitor that is notified about each analyzed unit or
+		 * <code>null</code> if the progress is reported by the calling thread.
+		 */
+		private final IProgressMonitor progress;
+
+		private R result;
+
+		private Worker(IJavaProject javaProject, IASTAnalysis<R> analysis, Queue<ICompilationUnit[]> partitions,
+				AtomicInteger analyzedUnits, IProgressMonitor workerMonitor, IProgressMonitor progress) {
+			this.javaProject = javaProject;
+			this.analysis = analysis;
+			this.partitions = partitions;
+			this.analyzedUnits = analyzedUnits;
+			this.workerMonitor = workerMonitor;
+			this.progress = progress;
+		}
+
+		@Override
+		public R call() {
+			ICompilationUnit[] partition;
+			while ((partition = partitions.poll()) != null) {
+				if (workerMonitor.isCanceled()) {
+					break;
+				}
+				// a parser is reset after each use, so it is configured for
+				// each partition
+				ASTParser parser = parseOptions.createParser(true);
+				parser.setProject(javaProject);
+				parser.createASTs(partition, new String[0], new ASTRequestor() {
+
+					@Override
+					public void acceptAST(ICompilationUnit source, CompilationUnit ast) {
+						accept(analysis.analyze(source, ast));
+						analyzedUnits.incrementAndGet();
+						if (progress != null) {
+							progress.worked(1);
+						}
+					}
+				}, workerMonitor);
+			}
+			return result;
+		}
+
+		private void accept(R unitResult) {
+			if (unitResult == null) {
+				return;
+			}
+			result = (result == null ? unitResult : analysis.reduce(result, unitResult));
+		}
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads that analyze the units of a project. The
+	 * default is the number of available processors.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+	}
+
+	public int getPartitionSize() {
+		return partitionSize;
+	}
+
+	/**
+	 * Sets the number of units that are parsed in one batch. Larger
+	 * partitions share more bindings, smaller partitions need less memory and
+	 * distribute the work more evenly.
+	 */
+	public void setPartitionSize(int partitionSize) {
+		if (partitionSize < 1) {
+			throw new IllegalArgumentException("Partition size must be at least 1.");
+		}
+		this.partitionSize = partitionSize;
+	}
+
+	public ParseOptions getParseOptions() {
+		return parseOptions;
+	}
+
+	/**
+	 * Sets the options that are used to parse the units (the focal position is
+	 * ignored). By default, bindings are resolved.
+	 */
+	public void setParseOptions(ParseOptions parseOptions) {
+		this.parseOptions = parseOptions;
+	}
+
+	/**
+	 * Applies the given analysis to all compilation units in the source folders
+	 * of the given project and returns the merged result or <code>null</code>
+	 * if no unit contributed to the result.
+	 * 
+	 * @throws OperationCanceledException if the monitor was canceled
+	 */
+	public <R> R analyze(IJavaProject javaProject, IASTAnalysis<R> analysis, IProgressMonitor monitor)
+			throws JavaModelException {
+
+		List<ICompilationUnit> units = getCompilationUnits(javaProject);
+		SubMonitor progress = SubMonitor.convert(monitor, "Analyzing " + javaProject.getElementName(), units.size());
+
+		Queue<ICompilationUnit[]> partitions = new ConcurrentLinkedQueue<ICompilationUnit[]>();
+		for (int start = 0; start < units.size(); start += partitionSize) {
+			List<ICompilationUnit> partition = units.subList(start, Math.min(units.size(), start + partitionSize));
+			partitions.add(partition.toArray(new ICompilationUnit[partition.size()]));
+		}
+
+		final AtomicBoolean canceled = new AtomicBoolean();
+		// progress monitors are not thread-safe, so the workers use their own
+		// monitor which is canceled by the calling thread
+		IProgressMonitor workerMonitor = new NullProgressMonitor() {
+
+			@Override
+			public boolean isCanceled() {
+				return canceled.get();
+			}
+		};
+		AtomicInteger analyzedUnits = new AtomicInteger();
+		int workerCount = Math.min(parallelism, partitions.size());
+		if (workerCount <= 1) {
+			final SubMonitor callerProgress = progress;
+			IProgressMonitor callerMonitor = new NullProgressMonitor() {
+
+				@Override
+				public boolean isCanceled() {
+					return callerProgress.isCanceled();
+				}
+			};
+			R result = new Worker<R>(javaProject, analysis, partitions, analyzedUnits, callerMonitor, progress)
+					.call();
+			checkCanceled(progress);
+			return result;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		try {
+			List<Future<R>> futures = new ArrayList<Future<R>>(workerCount);
+			for (int i = 0; i < workerCount; i++) {
+				futures.add(executor.submit(new Worker<R>(javaProject, analysis, partitions, analyzedUnits,
+						workerMonitor, null)));
+			}
+
+			R result = null;
+			int reportedUnits = 0;
+			for (Future<R> future : futures) {
+				R workerResult = null;
+				boolean done = false;
+				while (!done) {
+					try {
+						workerResult = future.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+						done = true;
+					} catch (TimeoutException e) {
+						// update progress and check for cancellation below
+					} catch (ExecutionException e) {
+						canceled.set(true);
+						throw getUncheckedCause(e);
+					} catch (InterruptedException e) {
+						canceled.set(true);
+						Thread.currentThread().interrupt();
+						throw new OperationCanceledException();
+					}
+					int currentUnits = analyzedUnits.get();
+					progress.worked(currentUnits - reportedUnits);
+					reportedUnits = currentUnits;
+					if (progress.isCanceled()) {
+						canceled.set(true);
+					}
+				}
+				if (workerResult != null) {
+					result = (result == null ? workerResult : analysis.reduce(result, workerResult));
+				}
+			}
+			checkCanceled(progress);
+			return result;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns all compilation units in the source folders of the given
+	 * project. Source folders of required projects are not included.
+	 */
+	public List<ICompilationUnit> getCompilationUnits(IJavaProject javaProject) throws JavaModelException {
+		List<ICompilationUnit> units = new ArrayList<ICompilationUnit>();
+		for (IPackageFragmentRoot root : javaProject.getPackageFragmentRoots()) {
+			if (!javaProject.equals(root.getJavaProject()) || root.getKind() != IPackageFragmentRoot.K_SOURCE) {
+				continue;
+			}
+			for (IJavaElement child : root.getChildren()) {
+				if (child instanceof IPackageFragment) {
+					IPackageFragment packageFragment = (IPackageFragment) child;
+					for (ICompilationUnit unit : packageFragment.getCompilationUnits()) {
+						units.add(unit);
+					}
+				}
+			}
+		}
+		return units;
+	}
+
+	private void checkCanceled(IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	private RuntimeException getUncheckedCause(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		return new RuntimeException(cause);
+	}
+}
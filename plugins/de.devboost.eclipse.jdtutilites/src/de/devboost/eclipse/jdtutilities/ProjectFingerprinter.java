@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.ICommand;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.osgi.framework.Bundle;
+
+/**
+ * The {@link ProjectFingerprinter} computes a hash over everything that
+ * influences the result of a full build of a project: the natures and the
+ * builder specification, the raw classpath and the output location, the
+ * effective compiler options and the versions of a set of bundles (e.g., the
+ * bundles that contribute the builders). The fingerprints are stored as
+ * persistent properties of the projects, which allows to detect projects that
+ * must be rebuilt after the workspace is opened with a different setup.
+ */
+class ProjectFingerprinter {
+
+	private static final QualifiedName FINGERPRINT_PROPERTY = new QualifiedName("de.devboost.eclipse.jdtutilities",
+			"buildFingerprint");
+
+	private final String[] bundleIDs;
+
+	public ProjectFingerprinter(String[] bundleIDs) {
+		super();
+		this.bundleIDs = bundleIDs;
+	}
+
+	/**
+	 * Returns <code>true</code> if the current fingerprint of the given
+	 * project differs from the stored one or if no fingerprint is stored for
+	 * the project.
+	 */
+	public boolean hasChanged(IProject project) throws CoreException {
+		String storedFingerprint = project.getPersistentProperty(FINGERPRINT_PROPERTY);
+		if (storedFingerprint == null) {
+			return true;
+		}
+		return !storedFingerprint.equals(computeFingerprint(project));
+	}
+
+	/**
+	 * Stores the current fingerprint of the given project.
+	 */
+	public void storeFingerprint(IProject project) throws CoreException {
+		project.setPersistentProperty(FINGERPRINT_PROPERTY, computeFingerprint(project));
+	}
+
+	/**
+	 * Returns the current fingerprint of the given project as hexadecimal
+	 * string.
+	 */
+	public String computeFingerprint(IProject project) throws CoreException {
+		MessageDigest digest = createDigest();
+		IProjectDescription description = project.getDescription();
+		for (String natureID : description.getNatureIds()) {
+			update(digest, "nature", natureID);
+		}
+		for (ICommand command : description.getBuildSpec()) {
+			update(digest, "builder", command.getBuilderName());
+			Map<String, String> arguments = command.getArguments();
+			if (arguments != null) {
+				updateSorted(digest, "argument", arguments);
+			}
+		}
+
+		if (project.isNatureEnabled(JavaCore.NATURE_ID)) {
+			IJavaProject javaProject = JavaCore.create(project);
+			for (IClasspathEntry classpathEntry : javaProject.getRawClasspath()) {
+				update(digest, "classpath", classpathEntry.toString());
+			}
+			update(digest, "output", String.valueOf(javaProject.getOutputLocation()));
+			updateSorted(digest, "option", javaProject.getOptions(true));
+		}
+
+		for (String bundleID : bundleIDs) {
+			Bundle bundle = Platform.getBundle(bundleID);
+			String version = bundle == null ? "<absent>" : bundle.getVersion().toString();
+			update(digest, "bundle", bundleID + "=" + version);
+		}
+		return toHex(digest.digest());
+	}
+
+	private void updateSorted(MessageDigest digest, String kind, Map<String, String> map) {
+		for (Map.Entry<String, String> entry : new TreeMap<String, String>(map).entrySet()) {
+			update(digest, kind, entry.getKey() + "=" + entry.getValue());
+		}
+	}
+
+	private void update(MessageDigest digest, String kind, String value) {
+		try {
+			digest.update(kind.getBytes("UTF-8"));
+			digest.update((byte) ':');
+			digest.update(value.getBytes("UTF-8"));
+			digest.update((byte) '\n');
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-1 is supported by every Java platform
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private String toHex(byte[] bytes) {
+		StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xF, 16));
+			result.append(Character.forDigit(b & 0xF, 16));
+		}
+		return result.toString();
+	}
+}
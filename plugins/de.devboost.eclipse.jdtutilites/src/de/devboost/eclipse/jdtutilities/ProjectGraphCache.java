@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * The {@link ProjectGraphCache} holds the {@link WorkspaceProjectGraph} of all
+ * projects in the workspace. If the classpath of a project changes, only the
+ * dependencies of this project are read again when the graph is requested
+ * the next time. If projects are added, removed, opened or closed, the graph
+ * is rebuilt completely. The cache starts listening to Java element deltas
+ * when it is used for the first time.
+ */
+final class ProjectGraphCache implements IElementChangedListener {
+
+	private static final int CLASSPATH_CHANGED = IJavaElementDelta.F_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED;
+
+	private static final int PROJECT_CHANGED = IJavaElementDelta.F_OPENED | IJavaElementDelta.F_CLOSED;
+
+	private static ProjectGraphCache instance;
+
+	private WorkspaceProjectGraph graph;
+
+	private final Set<String> changedProjects = new HashSet<String>();
+
+	/**
+	 * Is incremented on every change. Graphs that were computed while a
+	 * change happened are not stored.
+	 */
+	private long generation;
+
+	public static synchronized ProjectGraphCache getInstance() {
+		if (instance == null) {
+			instance = new ProjectGraphCache();
+			JavaCore.addElementChangedListener(instance, ElementChangedEvent.POST_CHANGE);
+		}
+		return instance;
+	}
+
+	private ProjectGraphCache() {
+		super();
+	}
+
+	public WorkspaceProjectGraph getGraph() {
+		WorkspaceProjectGraph previous;
+		Set<String> changed;
+		long generationBefore;
+		synchronized (this) {
+			if (graph != null && changedProjects.isEmpty()) {
+				return graph;
+			}
+			previous = graph;
+			changed = new HashSet<String>(changedProjects);
+			generationBefore = generation;
+		}
+
+		// the graph is computed without holding the lock, because reading the
+		// classpaths may trigger Java element deltas
+		WorkspaceProjectGraph newGraph;
+		if (previous == null) {
+			newGraph = new WorkspaceProjectGraph(ResourcesPlugin.getWorkspace().getRoot().getProjects());
+		} else {
+			newGraph = new WorkspaceProjectGraph(previous.getProjectArray(), previous, changed);
+		}
+
+		synchronized (this) {
+			if (generation == generationBefore) {
+				graph = newGraph;
+				changedProjects.clear();
+			}
+		}
+		return newGraph;
+	}
+
+	private synchronized void invalidate(String projectName) {
+		generation++;
+		if (graph != null) {
+			changedProjects.add(projectName);
+		}
+	}
+
+	private synchronized void invalidateAll() {
+		generation++;
+		graph = null;
+		changedProjects.clear();
+	}
+
+	@Override
+	public void elementChanged(ElementChangedEvent event) {
+		IJavaElementDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		IJavaElement element = delta.getElement();
+		if (element.getElementType() == IJavaElement.JAVA_MODEL) {
+			for (IJavaElementDelta child : delta.getAffectedChildren()) {
+				processProjectDelta(child);
+			}
+		} else {
+			processProjectDelta(delta);
+		}
+	}
+
+	private void processProjectDelta(IJavaElementDelta delta) {
+		IJavaElement element = delta.getElement();
+		if (element.getElementType() != IJavaElement.JAVA_PROJECT) {
+			return;
+		}
+		int flags = delta.getFlags();
+		if (delta.getKind() != IJavaElementDelta.CHANGED || (flags & PROJECT_CHANGED) != 0) {
+			invalidateAll();
+		} else if ((flags & CLASSPATH_CHANGED) != 0) {
+			invalidate(element.getElementName());
+		}
+	}
+}
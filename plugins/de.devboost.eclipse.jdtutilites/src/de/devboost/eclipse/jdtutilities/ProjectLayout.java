@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * A {@link ProjectLayout} is an immutable snapshot of the package fragment
+ * roots, the source folders and the output locations of a Java project. It is
+ * created and cached by the {@link ProjectLayoutCache}.
+ *
+ * The source folders include the source folders of required projects (like
+ * {@link IJavaProject#getAllPackageFragmentRoots()} does) and are therefore
+ * determined lazily when they are needed for the first time.
+ */
+final class ProjectLayout {
+
+	/**
+	 * A package fragment root together with its position on the classpath.
+	 */
+	static class RootEntry {
+		
+		private final IPackageFragmentRoot root;
+		private final int order;
+		private final String pathPrefix;
+		private final int segmentCount;
+
+		/**
+		 * Maps the folders in the root to their (interned) package names.
+		 */
+		private final PathTrie<String> packageNames = new PathTrie<String>();
+
+		private RootEntry(IPackageFragmentRoot root, int order) {
+			this.root = root;
+			this.order = order;
+			IPath rootPath = root.getPath();
+			this.pathPrefix = rootPath.toString() + "/";
+			this.segmentCount = rootPath.segmentCount();
+		}
+
+		/**
+		 * Returns the name of the package that corresponds to the folder which
+		 * consists of the first <code>folderSegmentCount</code> segments of
+		 * the given path. The folder must be contained in this root.
+		 */
+		private synchronized String getPackageName(IPath path, int folderSegmentCount) {
+			String packageName = packageNames.get(path, folderSegmentCount);
+			if (packageName != null) {
+				return packageName;
+			}
+			StringBuilder builder = new StringBuilder();
+			for (int i = segmentCount; i < folderSegmentCount; i++) {
+				if (builder.length() > 0) {
+					builder.append('.');
+				}
+				builder.append(path.segment(i));
+			}
+			packageName = builder.toString().intern();
+			packageNames.put(path.uptoSegment(folderSegmentCount), packageName);
+			return packageName;
+		}
+
+		public IPackageFragmentRoot getRoot() {
+			return root;
+		}
+
+		/**
+		 * Returns the path of the root followed by a slash.
+		 */
+		public String getPathPrefix() {
+			return pathPrefix;
+		}
+	}
+
+	private final IJavaProject javaProject;
+
+	private final PathTrie<RootEntry> roots = new PathTrie<RootEntry>();
+
+	private final Set<IPath> outputLocations = new LinkedHashSet<IPath>();
+
+	/**
+	 * The output locations of the project followed by a slash. The prefixes
+	 * are kept as strings to check platform URIs without allocating objects.
+	 */
+	private final String[] outputPathPrefixes;
+
+	private List<IPath> sourceFolders;
+	private PathTrie<IPath> sourceFolderTrie;
+	private List<IPackageFragmentRoot> classpathRoots;
+
+	ProjectLayout(IJavaProject javaProject) throws JavaModelException {
+		this.javaProject = javaProject;
+		IPackageFragmentRoot[] packageFragmentRoots = javaProject.getPackageFragmentRoots();
+		for (int i = 0; i < packageFragmentRoots.length; i++) {
+			IPackageFragmentRoot root = packageFragmentRoots[i];
+			IPath rootPath = root.getPath();
+			if (roots.get(rootPath) == null) {
+				roots.put(rootPath, new RootEntry(root, i));
+			}
+		}
+
+		// source folders can have their own output locations
+		IClasspathEntry[] classpathEntries = javaProject.getRawClasspath();
+		for (IClasspathEntry classpathEntry : classpathEntries) {
+			IPath outputLocation = classpathEntry.getOutputLocation();
+			if (outputLocation != null) {
+				outputLocations.add(outputLocation);
+			}
+		}
+		IPath defaultOutputLocation = javaProject.getOutputLocation();
+		if (defaultOutputLocation != null) {
+			outputLocations.add(defaultOutputLocation);
+		}
+
+		outputPathPrefixes = new String[outputLocations.size()];
+		int index = 0;
+		for (IPath outputLocation : outputLocations) {
+			String outputPath = outputLocation.toString();
+			// We add a slash to the end of the path to make sure that the
+			// output directory (e.g., 'bin') is not only a prefix of the
+			// corresponding fragments in the URI (e.g., 'bind-src'), but
+			// really refers to the same directory.
+			if (!outputPath.endsWith("/")) {
+				outputPath = outputPath + "/";
+			}
+			outputPathPrefixes[index++] = outputPath;
+		}
+	}
+
+	/**
+	 * Returns all package fragment roots of the project that contain the 
+	 * given path (i.e., whose path is a proper prefix of the given path) in
+	 * the order they appear on the classpath.
+	 */
+	public List<RootEntry> getContainingRoots(IPath path) {
+		List<RootEntry> result = new ArrayList<RootEntry>(2);
+		roots.collectPrefixMatches(path, true, result);
+		if (result.size() == 2 && result.get(0).order > result.get(1).order) {
+			result.add(result.remove(0));
+		} else if (result.size() > 2) {
+			sortByOrder(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the name of the package that contains the file with the given
+	 * path or <code>null</code> if the file is not contained in a package
+	 * fragment root of the project. The package is determined by the
+	 * innermost root that contains the file. Package names are cached, i.e.,
+	 * repeated lookups for files in the same folder do not allocate any
+	 * objects.
+	 */
+	public String getPackageName(IPath filePath) {
+		int folderSegmentCount = filePath.segmentCount() - 1;
+		RootEntry rootEntry = roots.getLongestPrefixMatch(filePath, folderSegmentCount);
+		if (rootEntry == null || rootEntry.segmentCount < 2) {
+			// the project itself is not resolved to a package fragment root
+			return null;
+		}
+		return rootEntry.getPackageName(filePath, folderSegmentCount);
+	}
+
+	private void sortByOrder(List<RootEntry> entries) {
+		// insertion sort, because nested roots are rare and lists are short
+		for (int i = 1; i < entries.size(); i++) {
+			RootEntry entry = entries.get(i);
+			int j = i - 1;
+			while (j >= 0 && entries.get(j).order > entry.order) {
+				entries.set(j + 1, entries.get(j));
+				j--;
+			}
+			entries.set(j + 1, entry);
+		}
+	}
+
+	/**
+	 * Returns the paths of all source folders that are visible to the project
+	 * (including the ones of required projects).
+	 */
+	public List<IPath> getSourceFolders() throws JavaModelException {
+		initializeSourceFolders();
+		return sourceFolders;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given path is a source folder that is
+	 * visible to the project or is contained in such a folder.
+	 */
+	public boolean isInSourceFolder(IPath path) throws JavaModelException {
+		initializeSourceFolders();
+		return sourceFolderTrie.getLongestPrefixMatch(path) != null;
+	}
+
+	private synchronized void initializeSourceFolders() throws JavaModelException {
+		if (sourceFolderTrie != null) {
+			return;
+		}
+
+		List<IPath> sourcePaths = new ArrayList<IPath>();
+		PathTrie<IPath> trie = new PathTrie<IPath>();
+		for (IPackageFragmentRoot packageFragmentRoot : getClasspathRoots()) {
+			if (packageFragmentRoot.getKind() == IPackageFragmentRoot.K_SOURCE) {
+				IPath sourcePath = packageFragmentRoot.getPath();
+				sourcePaths.add(sourcePath);
+				trie.put(sourcePath, sourcePath);
+			}
+		}
+		sourceFolders = Collections.unmodifiableList(sourcePaths);
+		sourceFolderTrie = trie;
+	}
+
+	/**
+	 * Returns all package fragment roots that are visible to the project
+	 * (including the ones of required projects) in the order they appear on
+	 * the resolved classpath.
+	 */
+	public synchronized List<IPackageFragmentRoot> getClasspathRoots() throws JavaModelException {
+		if (classpathRoots == null) {
+			IPackageFragmentRoot[] allPackageFragmentRoots = javaProject.getAllPackageFragmentRoots();
+			classpathRoots = Collections.unmodifiableList(Arrays.asList(allPackageFragmentRoots));
+		}
+		return classpathRoots;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given path is the default output
+	 * location of the project or the output location of one of its source
+	 * folders.
+	 */
+	public boolean isOutputFolder(IPath path) {
+		return outputLocations.contains(path);
+	}
+
+	/**
+	 * Returns <code>true</code> if the given platform URI is located in one
+	 * of the output locations of the project.
+	 */
+	public boolean isInOutputFolder(String platformURI) {
+		for (String outputPathPrefix : outputPathPrefixes) {
+			if (platformURI.startsWith(outputPathPrefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
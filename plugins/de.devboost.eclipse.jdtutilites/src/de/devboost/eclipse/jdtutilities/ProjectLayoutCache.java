@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * The {@link ProjectLayoutCache} holds a {@link ProjectLayout} for each Java
+ * project that was queried. The layouts are discarded as soon as a Java
+ * element delta indicates that a classpath or the package fragment roots of a
+ * project have changed. Since layouts include the source folders of required
+ * projects, such a change discards the layouts of all projects. The cache is
+ * shared by all {@link JDTUtility} instances and starts listening to deltas
+ * when it is used for the first time.
+ */
+final class ProjectLayoutCache implements IElementChangedListener {
+
+	private static final int LAYOUT_CHANGED = IJavaElementDelta.F_OPENED
+			| IJavaElementDelta.F_CLOSED
+			| IJavaElementDelta.F_ADDED_TO_CLASSPATH
+			| IJavaElementDelta.F_REMOVED_FROM_CLASSPATH
+			| IJavaElementDelta.F_CLASSPATH_CHANGED
+			| IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED;
+
+	private static ProjectLayoutCache instance;
+
+	private final Map<String, ProjectLayout> layouts = new ConcurrentHashMap<String, ProjectLayout>();
+
+	/**
+	 * Is incremented on every invalidation. Layouts that were computed while
+	 * an invalidation happened are not stored.
+	 */
+	private long generation;
+
+	public static synchronized ProjectLayoutCache getInstance() {
+		if (instance == null) {
+			instance = new ProjectLayoutCache();
+			JavaCore.addElementChangedListener(instance, ElementChangedEvent.POST_CHANGE);
+		}
+		return instance;
+	}
+
+	private ProjectLayoutCache() {
+		super();
+	}
+
+	/**
+	 * Returns the (possibly cached) layout of the given project.
+	 */
+	public ProjectLayout getLayout(IJavaProject javaProject) throws JavaModelException {
+		String projectName = javaProject.getElementName();
+		ProjectLayout layout = layouts.get(projectName);
+		if (layout != null) {
+			return layout;
+		}
+
+		long generationBefore = getGeneration();
+		layout = new ProjectLayout(javaProject);
+		synchronized (this) {
+			if (generation == generationBefore) {
+				layouts.put(projectName, layout);
+			}
+		}
+		return layout;
+	}
+
+	/**
+	 * Returns the cached layout of the project with the given name or
+	 * <code>null</code> if the layout is not cached.
+	 */
+	public ProjectLayout getCachedLayout(String projectName) {
+		return layouts.get(projectName);
+	}
+
+	private synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Discards all layouts.
+	 */
+	public synchronized void invalidateAll() {
+		generation++;
+		layouts.clear();
+	}
+
+	@Override
+	public void elementChanged(ElementChangedEvent event) {
+		IJavaElementDelta delta = event.getDelta();
+		if (delta != null) {
+			processDelta(delta);
+		}
+	}
+
+	private void processDelta(IJavaElementDelta delta) {
+		IJavaElement element = delta.getElement();
+		int kind = delta.getKind();
+		int flags = delta.getFlags();
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_MODEL:
+			break;
+		case IJavaElement.JAVA_PROJECT:
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			if (kind != IJavaElementDelta.CHANGED || (flags & LAYOUT_CHANGED) != 0) {
+				invalidateAll();
+				return;
+			}
+			if (element.getElementType() == IJavaElement.PACKAGE_FRAGMENT_ROOT) {
+				// packages do not affect the layout
+				return;
+			}
+			break;
+		default:
+			return;
+		}
+
+		for (IJavaElementDelta child : delta.getAffectedChildren()) {
+			processDelta(child);
+		}
+	}
+}
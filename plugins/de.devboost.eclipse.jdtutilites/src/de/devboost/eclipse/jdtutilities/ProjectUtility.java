@@ -13,9 +13,18 @@
  ******************************************************************************/
 package de.devboost.eclipse.jdtutilities;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
@@ -24,67 +33,185 @@ import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.JavaModelException;
 
 public abstract class ProjectUtility {
 
+	/**
+	 * A {@link ClosureScan} discovers the transitive dependencies of a project
+	 * and checks them for errors at the same time. Each project is scanned by
+	 * a task that submits tasks for the required projects it discovers. The
+	 * direct dependencies are taken from the cached
+	 * {@link WorkspaceProjectGraph}. The scan is finished when no task is
+	 * pending anymore or (if requested) as soon as a project with errors is
+	 * found. In the latter case all pending tasks are canceled.
+	 */
+	private class ClosureScan {
+
+		private final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		private final WorkspaceProjectGraph graph = WorkspaceProjectGraph.getWorkspaceGraph();
+		private final boolean stopAtFirstError;
+		private final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+
+		private final Set<String> visitedProjects = Collections
+				.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		private final Map<String, Integer> problemProjects = new ConcurrentHashMap<String, Integer>();
+
+		private final AtomicInteger pendingTasks = new AtomicInteger();
+		private final CountDownLatch finished = new CountDownLatch(1);
+
+		private ClosureScan(boolean stopAtFirstError) {
+			this.stopAtFirstError = stopAtFirstError;
+		}
+
+		/**
+		 * Scans the closure of the given project and returns the names of the
+		 * projects with errors mapped to their number of errors.
+		 */
+		private Map<String, Integer> run(String projectName) throws InterruptedException {
+			try {
+				submit(projectName);
+				finished.await();
+			} finally {
+				executor.shutdownNow();
+			}
+			return new TreeMap<String, Integer>(problemProjects);
+		}
+
+		private void submit(final String projectName) {
+			if (!visitedProjects.add(projectName)) {
+				return;
+			}
+			pendingTasks.incrementAndGet();
+			try {
+				executor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							scan(projectName);
+						} finally {
+							if (pendingTasks.decrementAndGet() == 0) {
+								finished.countDown();
+							}
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// the scan was stopped
+				if (pendingTasks.decrementAndGet() == 0) {
+					finished.countDown();
+				}
+			}
+		}
+
+		private void scan(String projectName) {
+			if (finished.getCount() == 0) {
+				return;
+			}
+			IProject project = root.getProject(projectName);
+			if (project == null) {
+				return;
+			}
+			if (stopAtFirstError) {
+				if (hasProblems(project)) {
+					problemProjects.put(projectName, 1);
+					finished.countDown();
+					executor.shutdownNow();
+					return;
+				}
+			} else {
+				int errorCount = countErrors(project);
+				if (errorCount > 0) {
+					problemProjects.put(projectName, errorCount);
+				}
+			}
+			for (String dependency : graph.getRequiredProjects(projectName)) {
+				submit(dependency);
+			}
+		}
+	}
+
+	private int parallelism = 1;
+
+	/**
+	 * Returns the number of threads that are used to check the dependencies of
+	 * a project for errors.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads that are used to check the dependencies of a
+	 * project for errors. If the parallelism is one (which is the default),
+	 * {@link #hasProblems(String)} checks all projects in the calling thread.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+	}
+
 	/**
 	 * Checks whether the given project (or one of its transitive dependencies)
-	 * contains errors.
+	 * contains errors. The projects are checked while the dependencies are
+	 * discovered using the cached {@link WorkspaceProjectGraph}, so the check
+	 * stops at the first project with errors without computing the whole
+	 * closure. If the parallelism is greater than one, the projects are
+	 * checked concurrently.
 	 * 
 	 * @param projectName the name of the project to check
 	 * @return true if there is errors, false if not
 	 */
 	public boolean hasProblems(String projectName) {
+		if (parallelism > 1) {
+			try {
+				return !new ClosureScan(true).run(projectName).isEmpty();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				// check the projects in this thread instead
+			}
+		}
+
 		IWorkspace workspace = ResourcesPlugin.getWorkspace();
 		IWorkspaceRoot root = workspace.getRoot();
+		WorkspaceProjectGraph graph = WorkspaceProjectGraph.getWorkspaceGraph();
 		
 		Set<String> requiredProjects = new LinkedHashSet<String>();
+		requiredProjects.add(projectName);
 		
 		Set<String> projectsToAnalyze = new LinkedHashSet<String>();
 		projectsToAnalyze.add(projectName);
 		
 		while (!projectsToAnalyze.isEmpty()) {
 			Iterator<String> iterator = projectsToAnalyze.iterator();
-			IProject project = root.getProject(iterator.next());
+			String nextProject = iterator.next();
 			iterator.remove();
-			if (project != null) {
-				requiredProjects.add(project.getName());
-				String[] dependencies = getRequiredProjects(project);
-				for (String dependency : dependencies) {
-					if (!requiredProjects.contains(dependency)) {
-						projectsToAnalyze.add(dependency);
-					}
-					requiredProjects.add(dependency);
-				}
-			}
-		}
-		
-		for (String requiredProject : requiredProjects) {
-			if (hasProblems(root.getProject(requiredProject))) {
+			if (hasProblems(root.getProject(nextProject))) {
 				return true;
 			}
+			for (String dependency : graph.getRequiredProjects(nextProject)) {
+				if (requiredProjects.add(dependency)) {
+					projectsToAnalyze.add(dependency);
+				}
+			}
 		}
 		return false;
 	}
 
-	// This code is copied from org.eclipse.debug.core.model.LaunchConfigurationDelegate.
+	/**
+	 * Checks whether the given project contains errors. The maximum severity
+	 * of the problem markers of each project is cached until the markers of
+	 * the project change (see {@link ProblemMarkerCache}).
+	 */
 	public boolean hasProblems(IProject project) {
 		try {
 			if (!project.exists()) {
 				return false;
 			}
-			IMarker[] markers = project.findMarkers(IMarker.PROBLEM, true,
-					IResource.DEPTH_INFINITE);
-			int markerCount = markers.length;
-			if (markerCount > 0) {
-				for (int i = 0; i < markerCount; i++) {
-					if (isErrorOrWorse(markers[i])) {
-						return true;
-					}
-				}
-			}
+			int maxSeverity = ProblemMarkerCache.getInstance().getMaxProblemSeverity(project);
+			return maxSeverity >= IMarker.SEVERITY_ERROR;
 		} catch (CoreException ce) {
 			logError("Exception while checking project for error markers.", ce);
 		}
@@ -92,36 +219,43 @@ public abstract class ProjectUtility {
 		return false;
 	}
 
-	private String[] getRequiredProjects(IProject project) {
-		JDTUtility jdtUtility = new JDTUtility() {
+	/**
+	 * Returns the names of all projects in the closure of the given project
+	 * (including the project itself) that contain errors, mapped to their
+	 * number of errors. The projects are checked concurrently if the
+	 * parallelism is greater than one.
+	 */
+	public Map<String, Integer> findProblemProjects(String projectName) {
+		try {
+			return new ClosureScan(false).run(projectName);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logWarning("Interrupted while checking projects for error markers.", e);
+			return Collections.emptyMap();
+		}
+	}
 
-			@Override
-			protected void logWarning(String message, Exception e) {
-				ProjectUtility.this.logWarning(message, e);
-			}
-			
-		};
-		IJavaProject javaProject = jdtUtility.getJavaProject(project);
-		
-		if (javaProject != null) {
-			try {
-				String[] requiredProjectNames = javaProject.getRequiredProjectNames();
-				return requiredProjectNames;
-			} catch (JavaModelException e) {
-				logError("Exception while determining project dependencies.", e);
+	/**
+	 * Returns the number of error markers of the given project.
+	 */
+	private int countErrors(IProject project) {
+		if (!hasProblems(project)) {
+			// avoid to create the markers if there are no errors at all
+			return 0;
+		}
+		try {
+			IMarker[] markers = project.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE);
+			int errorCount = 0;
+			for (IMarker marker : markers) {
+				if (marker.getAttribute(IMarker.SEVERITY, -1) >= IMarker.SEVERITY_ERROR) {
+					errorCount++;
+				}
 			}
+			return errorCount;
+		} catch (CoreException ce) {
+			logError("Exception while checking project for error markers.", ce);
+			return 0;
 		}
-		return new String[0];
-	}
-	
-	// This code is copied from org.eclipse.debug.core.model.LaunchConfigurationDelegate.
-	private boolean isErrorOrWorse(IMarker problemMarker) throws CoreException {
-		Integer severity = (Integer) problemMarker.getAttribute(IMarker.SEVERITY);
-		if (severity != null) {
-			return severity.intValue() >= IMarker.SEVERITY_ERROR;
-		} 
-		
-		return false;
 	}
 
 	protected abstract void logError(String message, Exception e);
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * The {@link WorkspaceProjectGraph} represents the dependencies between a set
+ * of projects as they are declared by the classpaths of the Java projects
+ * (see {@link IJavaProject#getRequiredProjectNames()}). Dependencies on
+ * projects that are not part of the graph are ignored.
+ * 
+ * The projects are numbered in the order they are passed to the graph. The
+ * transitive closures of the dependencies are computed on demand, stored as
+ * bit sets over these numbers and reused by subsequent queries. A graph is
+ * immutable, i.e., it does not reflect later changes of the classpaths. Use
+ * {@link #getWorkspaceGraph()} to obtain an up-to-date graph of all projects
+ * in the workspace.
+ */
+public class WorkspaceProjectGraph {
+
+	private static final String[] NO_PROJECTS = new String[0];
+
+	private final IProject[] projects;
+	private final Map<String, Integer> indices = new HashMap<String, Integer>();
+
+	/**
+	 * The names of the projects required by each project as declared by its
+	 * classpath (including projects that are not part of the graph).
+	 */
+	private final String[][] requiredProjectNames;
+
+	private final int[][] requiredProjects;
+	private final int[][] dependentProjects;
+
+	private final BitSet[] requiredClosures;
+	private final BitSet[] dependentClosures;
+
+	/**
+	 * Returns the graph of all projects in the workspace. The graph is cached
+	 * and updated when the classpath of a project changes or projects are
+	 * added, removed, opened or closed.
+	 */
+	public static WorkspaceProjectGraph getWorkspaceGraph() {
+		return ProjectGraphCache.getInstance().getGraph();
+	}
+
+	/**
+	 * Creates the graph for the given projects. Projects that are not
+	 * accessible or are not Java projects do not have any dependencies.
+	 */
+	public WorkspaceProjectGraph(IProject[] projects) {
+		this(projects, null, null);
+	}
+
+	/**
+	 * Creates a graph for the given projects that reuses the dependencies of
+	 * the given previous graph for all projects except the changed ones.
+	 */
+	WorkspaceProjectGraph(IProject[] projects, WorkspaceProjectGraph previous, Set<String> changedProjects) {
+		super();
+		int count = projects.length;
+		this.projects = projects.clone();
+		for (int i = 0; i < count; i++) {
+			indices.put(projects[i].getName(), i);
+		}
+
+		requiredProjectNames = new String[count][];
+		for (int i = 0; i < count; i++) {
+			String projectName = projects[i].getName();
+			Integer previousIndex = previous == null ? null : previous.indices.get(projectName);
+			if (previousIndex != null && !changedProjects.contains(projectName)) {
+				requiredProjectNames[i] = previous.requiredProjectNames[previousIndex];
+			} else {
+				requiredProjectNames[i] = readRequiredProjectNames(projects[i]);
+			}
+		}
+
+		requiredProjects = new int[count][];
+		int[] dependentCounts = new int[count];
+		for (int i = 0; i < count; i++) {
+			List<Integer> required = new ArrayList<Integer>(requiredProjectNames[i].length);
+			for (String requiredProjectName : requiredProjectNames[i]) {
+				Integer requiredIndex = indices.get(requiredProjectName);
+				if (requiredIndex != null) {
+					required.add(requiredIndex);
+					dependentCounts[requiredIndex]++;
+				}
+			}
+			requiredProjects[i] = toArray(required);
+		}
+
+		dependentProjects = new int[count][];
+		for (int i = 0; i < count; i++) {
+			dependentProjects[i] = new int[dependentCounts[i]];
+			dependentCounts[i] = 0;
+		}
+		for (int i = 0; i < count; i++) {
+			for (int requiredIndex : requiredProjects[i]) {
+				dependentProjects[requiredIndex][dependentCounts[requiredIndex]++] = i;
+			}
+		}
+
+		requiredClosures = new BitSet[count];
+		dependentClosures = new BitSet[count];
+	}
+
+	private String[] readRequiredProjectNames(IProject project) {
+		try {
+			if (!project.isAccessible() || !project.isNatureEnabled(JavaCore.NATURE_ID)) {
+				return NO_PROJECTS;
+			}
+			IJavaProject javaProject = JavaCore.create(project);
+			return javaProject.getRequiredProjectNames();
+		} catch (CoreException e) {
+			// projects with broken classpaths are treated like projects
+			// without dependencies, the builder reports the problem anyway
+			return NO_PROJECTS;
+		}
+	}
+
+	private int[] toArray(List<Integer> list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the projects contained in the graph.
+	 */
+	public List<IProject> getProjects() {
+		List<IProject> result = new ArrayList<IProject>(projects.length);
+		Collections.addAll(result, projects);
+		return result;
+	}
+
+	IProject[] getProjectArray() {
+		return projects;
+	}
+
+	/**
+	 * Returns <code>true</code> if the graph contains a project with the given
+	 * name.
+	 */
+	public boolean contains(String projectName) {
+		return indices.containsKey(projectName);
+	}
+
+	/**
+	 * Returns the project with the given name or <code>null</code> if the
+	 * graph does not contain such a project.
+	 */
+	public IProject getProject(String projectName) {
+		Integer index = indices.get(projectName);
+		if (index == null) {
+			return null;
+		}
+		return projects[index];
+	}
+
+	/**
+	 * Returns the names of the projects that are directly required by the
+	 * project with the given name.
+	 */
+	public Set<String> getRequiredProjects(String projectName) {
+		Integer index = indices.get(projectName);
+		if (index == null) {
+			return Collections.emptySet();
+		}
+		Set<String> result = new LinkedHashSet<String>();
+		for (int requiredIndex : requiredProjects[index]) {
+			result.add(projects[requiredIndex].getName());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the names of all projects that are required by the project with
+	 * the given name directly or indirectly. The project itself is not
+	 * contained, even if it is part of a dependency cycle.
+	 */
+	public Set<String> getRequiredProjectsTransitively(String projectName) {
+		Integer index = indices.get(projectName);
+		if (index == null) {
+			return Collections.emptySet();
+		}
+		return toNames(getClosure(index, requiredProjects, requiredClosures));
+	}
+
+	/**
+	 * Returns the names of all projects that require the project with the
+	 * given name directly or indirectly. The project itself is not contained,
+	 * even if it is part of a dependency cycle.
+	 */
+	public Set<String> getDependentProjects(String projectName) {
+		Integer index = indices.get(projectName);
+		if (index == null) {
+			return Collections.emptySet();
+		}
+		return toNames(getClosure(index, dependentProjects, dependentClosures));
+	}
+
+	/**
+	 * Returns the names of the given projects and of all projects that
+	 * require them directly or indirectly. Projects are returned in the order
+	 * they were passed to the graph. Projects that are not part of the graph
+	 * are ignored.
+	 */
+	public Set<String> getDependentProjects(Collection<String> projectNames) {
+		BitSet result = new BitSet(projects.length);
+		for (String projectName : projectNames) {
+			Integer index = indices.get(projectName);
+			if (index != null) {
+				result.set(index);
+				result.or(getClosure(index, dependentProjects, dependentClosures));
+			}
+		}
+		return toNames(result);
+	}
+
+	/**
+	 * Returns the closure of the given project over the given edges. The
+	 * closure is computed once and cached in the given array.
+	 */
+	private BitSet getClosure(int index, int[][] edges, BitSet[] closures) {
+		synchronized (closures) {
+			BitSet closure = closures[index];
+			if (closure != null) {
+				return closure;
+			}
+
+			closure = new BitSet(projects.length);
+			int[] stack = new int[projects.length];
+			int size = 0;
+			stack[size++] = index;
+			while (size > 0) {
+				int current = stack[--size];
+				for (int next : edges[current]) {
+					if (!closure.get(next)) {
+						closure.set(next);
+						stack[size++] = next;
+					}
+				}
+			}
+			closure.clear(index);
+			closures[index] = closure;
+			return closure;
+		}
+	}
+
+	private Set<String> toNames(BitSet indices) {
+		Set<String> result = new LinkedHashSet<String>();
+		for (int i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)) {
+			result.add(projects[i].getName());
+		}
+		return result;
+	}
+
+	/**
+	 * Splits the projects into waves such that each project is contained in a
+	 * later wave than all the projects it requires. Thus, the projects of a
+	 * wave do not depend on each other and can be built concurrently once the
+	 * previous waves are built. Projects that are part of (or depend on) a
+	 * dependency cycle cannot be ordered. Each of them is put into a separate
+	 * wave in the order they were passed to the graph, which makes sure that
+	 * they are not built concurrently.
+	 */
+	public List<List<IProject>> getBuildWaves() {
+		List<List<IProject>> waves = new ArrayList<List<IProject>>();
+		BitSet done = new BitSet(projects.length);
+		int remaining = projects.length;
+		while (remaining > 0) {
+			List<Integer> wave = new ArrayList<Integer>();
+			for (int i = done.nextClearBit(0); i < projects.length; i = done.nextClearBit(i + 1)) {
+				if (isBuildable(i, done)) {
+					wave.add(i);
+				}
+			}
+			if (wave.isEmpty()) {
+				// the remaining projects contain a cycle
+				for (int i = done.nextClearBit(0); i < projects.length; i = done.nextClearBit(i + 1)) {
+					waves.add(Collections.singletonList(projects[i]));
+				}
+				break;
+			}
+			List<IProject> waveProjects = new ArrayList<IProject>(wave.size());
+			for (int i : wave) {
+				done.set(i);
+				waveProjects.add(projects[i]);
+			}
+			remaining -= wave.size();
+			waves.add(waveProjects);
+		}
+		return waves;
+	}
+
+	private boolean isBuildable(int index, BitSet done) {
+		for (int requiredIndex : requiredProjects[index]) {
+			if (!done.get(requiredIndex)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities.benchmark;
+
+/**
+ * A {@link Benchmark} is a single operation that is measured by the
+ * {@link BenchmarkRunner}. The runner invokes {@link #run(int)} repeatedly
+ * with increasing iteration numbers, which benchmarks can use to cycle
+ * through their inputs.
+ */
+public abstract class Benchmark {
+
+	private final String name;
+
+	public Benchmark(String name) {
+		super();
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Is called once before the warm-up iterations. The default
+	 * implementation does nothing.
+	 */
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Is called once after the measurement. The default implementation does
+	 * nothing.
+	 */
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Executes the measured operation once. The result is consumed by the
+	 * runner to prevent the JIT from eliminating the operation.
+	 */
+	public abstract Object run(int iteration) throws Exception;
+}
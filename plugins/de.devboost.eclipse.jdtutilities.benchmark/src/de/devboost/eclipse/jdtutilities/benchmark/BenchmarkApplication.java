@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+
+/**
+ * The {@link BenchmarkApplication} is a headless Eclipse application that
+ * generates a synthetic workspace and runs the benchmarks for the
+ * {@link de.devboost.eclipse.jdtutilities.JDTUtility},
+ * {@link de.devboost.eclipse.jdtutilities.ClassDependencyUtility} and
+ * {@link de.devboost.eclipse.jdtutilities.ProjectUtility} against it.
+ * 
+ * The application is started with
+ * <code>-application de.devboost.eclipse.jdtutilities.benchmark.benchmark</code>
+ * and accepts the following arguments:
+ * 
+ * <pre>
+ * -projects &lt;n&gt;       number of projects (default 10)
+ * -sourceFolders &lt;n&gt;  source folders per project (default 1)
+ * -packages &lt;n&gt;       packages per project (default 10)
+ * -types &lt;n&gt;          types per package (default 10)
+ * -fanOut &lt;n&gt;         references per type (default 5)
+ * -seed &lt;n&gt;           seed for the random references (default 42)
+ * -warmup &lt;n&gt;         warm-up iterations per benchmark (default 1000)
+ * -iterations &lt;n&gt;     measured iterations per benchmark (default 10000)
+ * -filter &lt;text&gt;      runs only benchmarks whose name contains the text
+ * -output &lt;file&gt;      writes the results as CSV to the given file
+ * </pre>
+ * 
+ * The CSV files of two runs can be compared to detect regressions.
+ */
+public class BenchmarkApplication implements IApplication {
+
+	private int warmupIterations = 1000;
+	private int measurementIterations = 10000;
+	private String filter;
+	private File outputFile;
+
+	@Override
+	public Object start(IApplicationContext context) throws Exception {
+		String[] arguments = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+		WorkspaceGenerator generator = new WorkspaceGenerator();
+		parseArguments(arguments == null ? new String[0] : arguments, generator);
+
+		System.out.println("Generating workspace (" + generator.getConfiguration() + ")");
+		SyntheticWorkspace workspace = generator.generate(new NullProgressMonitor());
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.addAll(new JDTUtilityBenchmarks(workspace).createBenchmarks());
+		benchmarks.addAll(new ClassDependencyUtilityBenchmarks(workspace).createBenchmarks());
+		benchmarks.addAll(new ProjectUtilityBenchmarks(workspace).createBenchmarks());
+
+		BenchmarkRunner runner = new BenchmarkRunner(warmupIterations, measurementIterations);
+		List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+		for (Benchmark benchmark : benchmarks) {
+			// benchmarks that belong together share set up and tear down, so
+			// a filter only skips their measurement
+			boolean measure = filter == null || benchmark.getName().contains(filter);
+			BenchmarkResult result = measure ? runner.run(benchmark) : skip(benchmark);
+			if (result != null) {
+				System.out.println(result);
+				results.add(result);
+			}
+		}
+
+		if (outputFile != null) {
+			writeCSV(results);
+		}
+		return IApplication.EXIT_OK;
+	}
+
+	private BenchmarkResult skip(Benchmark benchmark) throws Exception {
+		benchmark.setUp();
+		benchmark.tearDown();
+		return null;
+	}
+
+	private void parseArguments(String[] arguments, WorkspaceGenerator generator) {
+		for (int i = 0; i + 1 < arguments.length; i += 2) {
+			String name = arguments[i];
+			String value = arguments[i + 1];
+			if ("-projects".equals(name)) {
+				generator.setProjectCount(Integer.parseInt(value));
+			} else if ("-sourceFolders".equals(name)) {
+				generator.setSourceFoldersPerProject(Integer.parseInt(value));
+			} else if ("-packages".equals(name)) {
+				generator.setPackagesPerProject(Integer.parseInt(value));
+			} else if ("-types".equals(name)) {
+				generator.setTypesPerPackage(Integer.parseInt(value));
+			} else if ("-fanOut".equals(name)) {
+				generator.setFanOut(Integer.parseInt(value));
+			} else if ("-seed".equals(name)) {
+				generator.setSeed(Long.parseLong(value));
+			} else if ("-warmup".equals(name)) {
+				warmupIterations = Integer.parseInt(value);
+			} else if ("-iterations".equals(name)) {
+				measurementIterations = Integer.parseInt(value);
+			} else if ("-filter".equals(name)) {
+				filter = value;
+			} else if ("-output".equals(name)) {
+				outputFile = new File(value);
+			} else {
+				throw new IllegalArgumentException("Unknown argument " + name);
+			}
+		}
+	}
+
+	private void writeCSV(List<BenchmarkResult> results) throws IOException {
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"));
+		try {
+			writer.println(BenchmarkResult.getCSVHeader());
+			for (BenchmarkResult result : results) {
+				writer.println(result.toCSV());
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	@Override
+	public void stop() {
+		// the benchmarks cannot be interrupted
+	}
+
+	static void logWarning(String message, Exception e) {
+		System.err.println(message);
+		if (e != null) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A {@link BenchmarkResult} contains the measurements of a single
+ * {@link Benchmark}: the throughput, the latency distribution and the number
+ * of bytes that were allocated per operation.
+ */
+public class BenchmarkResult {
+
+	private static final String CSV_HEADER = "benchmark,operations,opsPerSecond,p50Nanos,p90Nanos,p99Nanos,maxNanos,bytesPerOperation";
+
+	private final String name;
+	private final long[] sortedLatencies;
+	private final long totalNanos;
+	private final long allocatedBytes;
+
+	/**
+	 * Creates a result from the latencies (in nanoseconds) of the measured
+	 * operations. The allocated bytes are negative if they could not be
+	 * measured.
+	 */
+	public BenchmarkResult(String name, long[] latencies, long totalNanos, long allocatedBytes) {
+		super();
+		this.name = name;
+		this.sortedLatencies = latencies.clone();
+		Arrays.sort(sortedLatencies);
+		this.totalNanos = totalNanos;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getOperations() {
+		return sortedLatencies.length;
+	}
+
+	public double getOperationsPerSecond() {
+		if (totalNanos == 0) {
+			return 0;
+		}
+		return sortedLatencies.length * 1e9 / totalNanos;
+	}
+
+	/**
+	 * Returns the latency (in nanoseconds) below which the given percentage of
+	 * the operations completed.
+	 */
+	public long getPercentile(double percentage) {
+		if (sortedLatencies.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentage / 100 * sortedLatencies.length) - 1;
+		index = Math.max(0, Math.min(sortedLatencies.length - 1, index));
+		return sortedLatencies[index];
+	}
+
+	public long getMaximum() {
+		if (sortedLatencies.length == 0) {
+			return 0;
+		}
+		return sortedLatencies[sortedLatencies.length - 1];
+	}
+
+	/**
+	 * Returns the number of bytes that were allocated per operation or -1 if
+	 * allocations cannot be measured on this VM.
+	 */
+	public long getBytesPerOperation() {
+		if (allocatedBytes < 0 || sortedLatencies.length == 0) {
+			return -1;
+		}
+		return allocatedBytes / sortedLatencies.length;
+	}
+
+	public static String getCSVHeader() {
+		return CSV_HEADER;
+	}
+
+	public String toCSV() {
+		return String.format(Locale.ENGLISH, "%s,%d,%.1f,%d,%d,%d,%d,%d", name, getOperations(),
+				getOperationsPerSecond(), getPercentile(50), getPercentile(90), getPercentile(99), getMaximum(),
+				getBytesPerOperation());
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ENGLISH,
+				"%-50s %12.1f ops/s  p50=%8.2f us  p90=%8.2f us  p99=%8.2f us  max=%9.2f us  %8d B/op", name,
+				getOperationsPerSecond(), getPercentile(50) / 1e3, getPercentile(90) / 1e3,
+				getPercentile(99) / 1e3, getMaximum() / 1e3, getBytesPerOperation());
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * The {@link BenchmarkRunner} executes a {@link Benchmark} for a number of
+ * warm-up iterations (to let the JIT compile the code and to fill caches) and
+ * afterwards measures the latency of each operation of the measurement
+ * iterations. The bytes allocated by the measurement are determined using the
+ * thread allocation counter of HotSpot-based VMs, if it is available.
+ */
+public class BenchmarkRunner {
+
+	private final int warmupIterations;
+	private final int measurementIterations;
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final Method getThreadAllocatedBytes;
+
+	/**
+	 * Receives the results of the operations to make sure they are not
+	 * eliminated as dead code.
+	 */
+	private int sink;
+
+	public BenchmarkRunner(int warmupIterations, int measurementIterations) {
+		super();
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.getThreadAllocatedBytes = findAllocationCounter();
+	}
+
+	public BenchmarkResult run(Benchmark benchmark) throws Exception {
+		benchmark.setUp();
+		try {
+			for (int i = 0; i < warmupIterations; i++) {
+				consume(benchmark.run(i));
+			}
+
+			long[] latencies = new long[measurementIterations];
+			long allocatedBefore = getAllocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < measurementIterations; i++) {
+				long operationStart = System.nanoTime();
+				Object result = benchmark.run(warmupIterations + i);
+				latencies[i] = System.nanoTime() - operationStart;
+				consume(result);
+			}
+			long totalNanos = System.nanoTime() - start;
+			long allocatedAfter = getAllocatedBytes();
+
+			long allocatedBytes = -1;
+			if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+				allocatedBytes = allocatedAfter - allocatedBefore;
+			}
+			return new BenchmarkResult(benchmark.getName(), latencies, totalNanos, allocatedBytes);
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	private void consume(Object result) {
+		if (result != null) {
+			sink += System.identityHashCode(result);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far or
+	 * -1 if the VM does not provide this information.
+	 */
+	private long getAllocatedBytes() {
+		if (getThreadAllocatedBytes == null) {
+			return -1;
+		}
+		try {
+			Object bytes = getThreadAllocatedBytes.invoke(threadBean, Thread.currentThread().getId());
+			return ((Long) bytes).longValue();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	private Method findAllocationCounter() {
+		// com.sun.management.ThreadMXBean is not available on all VMs, so it
+		// is accessed using reflection
+		try {
+			Class<?> hotSpotBean = Class.forName("com.sun.management.ThreadMXBean");
+			if (!hotSpotBean.isInstance(threadBean)) {
+				return null;
+			}
+			return hotSpotBean.getMethod("getThreadAllocatedBytes", long.class);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a value that depends on all consumed results.
+	 */
+	public int getSink() {
+		return sink;
+	}
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import de.devboost.eclipse.jdtutilities.BytecodeDependencyExtractor;
+import de.devboost.eclipse.jdtutilities.ClassDependencyCache;
+import de.devboost.eclipse.jdtutilities.ClassDependencyIndex;
+import de.devboost.eclipse.jdtutilities.ClassDependencyUtility;
+
+/**
+ * The {@link ClassDependencyUtilityBenchmarks} measure the dependency queries
+ * of the {@link ClassDependencyUtility} using the search engine, the
+ * {@link ClassDependencyCache} and the {@link ClassDependencyIndex}.
+ */
+public class ClassDependencyUtilityBenchmarks {
+
+	private static final int CACHE_WEIGHT = 1000000;
+	private static final int TRANSITIVE_DEPTH = 3;
+
+	private final SyntheticWorkspace workspace;
+
+	public ClassDependencyUtilityBenchmarks(SyntheticWorkspace workspace) {
+		super();
+		this.workspace = workspace;
+	}
+
+	public List<Benchmark> createBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		final ClassDependencyUtility searchUtility = createUtility();
+		benchmarks.add(new Benchmark("ClassDependencyUtility.findReferencesFrom[search]") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				return searchUtility.findReferencesFrom(getPath(iteration));
+			}
+		});
+		benchmarks.add(new Benchmark("ClassDependencyUtility.findReferencesTo[search]") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				return searchUtility.findReferencesTo(getPath(iteration));
+			}
+		});
+		benchmarks.add(new Benchmark("ClassDependencyUtility.findReferencesToTransitively[search]") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				return searchUtility.findReferencesToTransitively(getPath(iteration), TRANSITIVE_DEPTH);
+			}
+		});
+
+		final ClassDependencyUtility cachedUtility = createUtility();
+		benchmarks.add(new Benchmark("ClassDependencyUtility.findReferencesFrom[cache]") {
+
+			@Override
+			public void setUp() throws Exception {
+				cachedUtility.setCache(new ClassDependencyCache(CACHE_WEIGHT));
+			}
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				return cachedUtility.findReferencesFrom(getPath(iteration));
+			}
+
+			@Override
+			public void tearDown() throws Exception {
+				cachedUtility.getCache().dispose();
+				cachedUtility.setCache(null);
+			}
+		});
+		benchmarks.add(new Benchmark("ClassDependencyUtility.findReferencesFromTransitively[cache]") {
+
+			@Override
+			public void setUp() throws Exception {
+				cachedUtility.setCache(new ClassDependencyCache(CACHE_WEIGHT));
+			}
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				return cachedUtility.findReferencesFromTransitively(getPath(iteration));
+			}
+
+			@Override
+			public void tearDown() throws Exception {
+				cachedUtility.getCache().dispose();
+				cachedUtility.setCache(null);
+			}
+		});
+
+		final ClassDependencyUtility indexedUtility = createUtility();
+		benchmarks.add(new Benchmark("ClassDependencyUtility.findReferencesTo[index]") {
+
+			@Override
+			public void setUp() throws Exception {
+				ClassDependencyIndex index = new ClassDependencyIndex(new BytecodeDependencyExtractor() {
+
+					@Override
+					protected void logWarning(String message, Exception e) {
+						BenchmarkApplication.logWarning(message, e);
+					}
+				});
+				index.build(new NullProgressMonitor());
+				indexedUtility.setIndex(index);
+			}
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				return indexedUtility.findReferencesTo(getPath(iteration));
+			}
+		});
+		benchmarks.add(new Benchmark("ClassDependencyUtility.findReferencesToTransitively[index]") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				return indexedUtility.findReferencesToTransitively(getPath(iteration), TRANSITIVE_DEPTH);
+			}
+
+			@Override
+			public void tearDown() throws Exception {
+				indexedUtility.getIndex().dispose();
+				indexedUtility.setIndex(null);
+			}
+		});
+		return benchmarks;
+	}
+
+	private String getPath(int iteration) {
+		return SyntheticWorkspace.cycle(workspace.getSourceFilePaths(), iteration);
+	}
+
+	private ClassDependencyUtility createUtility() {
+		return new ClassDependencyUtility() {
+
+			@Override
+			protected void logWarning(String message, Exception e) {
+				BenchmarkApplication.logWarning(message, e);
+			}
+		};
+	}
+}
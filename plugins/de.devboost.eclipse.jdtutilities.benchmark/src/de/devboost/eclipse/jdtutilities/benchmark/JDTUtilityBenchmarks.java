@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import de.devboost.eclipse.jdtutilities.JDTUtility;
+
+/**
+ * The {@link JDTUtilityBenchmarks} measure the path-based lookups of the
+ * {@link JDTUtility}.
+ */
+public class JDTUtilityBenchmarks {
+
+	private final JDTUtility jdtUtility = new JDTUtility() {
+
+		@Override
+		protected void logWarning(String message, Exception e) {
+			BenchmarkApplication.logWarning(message, e);
+		}
+	};
+
+	private final SyntheticWorkspace workspace;
+
+	private final List<IFile> files = new ArrayList<IFile>();
+	private final List<IPath> outputPaths = new ArrayList<IPath>();
+
+	public JDTUtilityBenchmarks(SyntheticWorkspace workspace) {
+		super();
+		this.workspace = workspace;
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		for (String path : workspace.getSourceFilePaths()) {
+			files.add(root.getFile(new Path(path)));
+		}
+		for (String projectName : workspace.getProjectNames()) {
+			outputPaths.add(new Path("/" + projectName + "/bin"));
+		}
+	}
+
+	public List<Benchmark> createBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new Benchmark("JDTUtility.getJavaElement") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				String path = SyntheticWorkspace.cycle(workspace.getSourceFilePaths(), iteration);
+				return jdtUtility.getJavaElement(path);
+			}
+		});
+		benchmarks.add(new Benchmark("JDTUtility.getPackageName") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				return jdtUtility.getPackageName(SyntheticWorkspace.cycle(files, iteration));
+			}
+		});
+		benchmarks.add(new Benchmark("JDTUtility.isInSourceFolder") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				IFile file = SyntheticWorkspace.cycle(files, iteration);
+				return jdtUtility.isInSourceFolder(file.getProject(), file);
+			}
+		});
+		benchmarks.add(new Benchmark("JDTUtility.isInOutputFolder") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				IFile file = SyntheticWorkspace.cycle(files, iteration);
+				String uri = SyntheticWorkspace.cycle(workspace.getClassFilePlatformURIs(), iteration);
+				return jdtUtility.isInOutputFolder(file.getProject(), uri);
+			}
+		});
+		benchmarks.add(new Benchmark("JDTUtility.isOutputFolder") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				IPath outputPath = SyntheticWorkspace.cycle(outputPaths, iteration);
+				IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(outputPath.segment(0));
+				return jdtUtility.isOutputFolder(project, outputPath);
+			}
+		});
+		return benchmarks;
+	}
+}
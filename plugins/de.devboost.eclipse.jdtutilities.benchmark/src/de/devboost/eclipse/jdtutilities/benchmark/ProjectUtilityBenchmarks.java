@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import de.devboost.eclipse.jdtutilities.ProjectUtility;
+
+/**
+ * The {@link ProjectUtilityBenchmarks} measure the problem checks of the
+ * {@link ProjectUtility}. The last project of the synthetic workspace requires
+ * all other projects transitively and is therefore the most expensive input.
+ */
+public class ProjectUtilityBenchmarks {
+
+	private final ProjectUtility projectUtility = new ProjectUtility() {
+
+		@Override
+		protected void logError(String message, Exception e) {
+			BenchmarkApplication.logWarning(message, e);
+		}
+
+		@Override
+		protected void logWarning(String message, Exception e) {
+			BenchmarkApplication.logWarning(message, e);
+		}
+	};
+
+	private final SyntheticWorkspace workspace;
+
+	public ProjectUtilityBenchmarks(SyntheticWorkspace workspace) {
+		super();
+		this.workspace = workspace;
+	}
+
+	public List<Benchmark> createBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new Benchmark("ProjectUtility.hasProblems[closure]") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				List<String> projectNames = workspace.getProjectNames();
+				return projectUtility.hasProblems(projectNames.get(projectNames.size() - 1));
+			}
+		});
+		benchmarks.add(new Benchmark("ProjectUtility.hasProblems[single]") {
+
+			@Override
+			public Object run(int iteration) throws Exception {
+				String projectName = SyntheticWorkspace.cycle(workspace.getProjectNames(), iteration);
+				IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
+				return projectUtility.hasProblems(project);
+			}
+		});
+		return benchmarks;
+	}
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link SyntheticWorkspace} describes the projects and resources that were
+ * created by the {@link WorkspaceGenerator}. The benchmarks use it to pick the
+ * inputs of the operations they measure.
+ */
+public class SyntheticWorkspace {
+
+	private final List<String> projectNames;
+	private final List<String> sourceFilePaths;
+	private final List<String> classFilePlatformURIs;
+
+	public SyntheticWorkspace(List<String> projectNames, List<String> sourceFilePaths,
+			List<String> classFilePlatformURIs) {
+		super();
+		this.projectNames = Collections.unmodifiableList(projectNames);
+		this.sourceFilePaths = Collections.unmodifiableList(sourceFilePaths);
+		this.classFilePlatformURIs = Collections.unmodifiableList(classFilePlatformURIs);
+	}
+
+	/**
+	 * Returns the names of the generated projects. Each project requires the
+	 * project that precedes it in this list.
+	 */
+	public List<String> getProjectNames() {
+		return projectNames;
+	}
+
+	/**
+	 * Returns the workspace-relative paths of all generated Java source files.
+	 */
+	public List<String> getSourceFilePaths() {
+		return sourceFilePaths;
+	}
+
+	/**
+	 * Returns platform URIs (without the scheme) that point to files in the
+	 * output folders of the generated projects.
+	 */
+	public List<String> getClassFilePlatformURIs() {
+		return classFilePlatformURIs;
+	}
+
+	/**
+	 * Returns the element at the given index modulo the size of the given
+	 * list. This allows benchmarks to cycle through their inputs.
+	 */
+	public static <T> T cycle(List<T> list, int index) {
+		return list.get(index % list.size());
+	}
+}
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2012-2018
+ * DevBoost GmbH, Dresden, Amtsgericht Dresden, HRB 34001
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *   DevBoost GmbH - Dresden, Germany
+ *      - initial API and implementation
+ ******************************************************************************/
+package de.devboost.eclipse.jdtutilities.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.core.resources.ICommand;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceDescription;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * The {@link WorkspaceGenerator} creates a synthetic workspace that consists
+ * of a chain of Java projects (each project requires its predecessor). Every
+ * project contains the configured number of source folders, packages and
+ * types. Each type references a fixed number of other types (the fan-out)
+ * that are picked randomly from its own project and from the project it
+ * requires. The random generator is seeded, so the generated workspace is the
+ * same for every run with the same configuration.
+ */
+public class WorkspaceGenerator {
+
+	private static final String PLUGIN_ID = "de.devboost.eclipse.jdtutilities.benchmark";
+	private static final String PROJECT_PREFIX = "benchmark.project";
+	private static final String JAVA_BUILDER_ID = "org.eclipse.jdt.core.javabuilder";
+	private static final String JRE_CONTAINER = "org.eclipse.jdt.launching.JRE_CONTAINER";
+	private static final String OUTPUT_FOLDER = "bin";
+
+	private int projectCount = 10;
+	private int sourceFoldersPerProject = 1;
+	private int packagesPerProject = 10;
+	private int typesPerPackage = 10;
+	private int fanOut = 5;
+	private long seed = 42;
+
+	public void setProjectCount(int projectCount) {
+		this.projectCount = projectCount;
+	}
+
+	public void setSourceFoldersPerProject(int sourceFoldersPerProject) {
+		this.sourceFoldersPerProject = sourceFoldersPerProject;
+	}
+
+	public void setPackagesPerProject(int packagesPerProject) {
+		this.packagesPerProject = packagesPerProject;
+	}
+
+	public void setTypesPerPackage(int typesPerPackage) {
+		this.typesPerPackage = typesPerPackage;
+	}
+
+	public void setFanOut(int fanOut) {
+		this.fanOut = fanOut;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns a human-readable description of the configuration.
+	 */
+	public String getConfiguration() {
+		return "projects=" + projectCount + ", sourceFolders=" + sourceFoldersPerProject + ", packages="
+				+ packagesPerProject + ", types=" + typesPerPackage + ", fanOut=" + fanOut + ", seed=" + seed;
+	}
+
+	/**
+	 * Deletes the synthetic projects of a previous run, generates the
+	 * synthetic projects and performs a full build. The generator refuses to
+	 * run if the workspace contains any other project. Auto-building is
+	 * disabled while the workspace is generated and restored afterwards.
+	 */
+	public SyntheticWorkspace generate(IProgressMonitor monitor) throws CoreException {
+		final SubMonitor progress = SubMonitor.convert(monitor, "Generating workspace", 3);
+		final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		final IWorkspaceRoot root = workspace.getRoot();
+		for (IProject project : root.getProjects()) {
+			if (!project.getName().startsWith(PROJECT_PREFIX)) {
+				throw new CoreException(new Status(IStatus.ERROR, PLUGIN_ID, "The workspace contains project "
+						+ project.getName() + ". Please use an empty workspace for benchmarks."));
+			}
+		}
+
+		IWorkspaceDescription description = workspace.getDescription();
+		boolean autoBuilding = description.isAutoBuilding();
+		description.setAutoBuilding(false);
+		workspace.setDescription(description);
+		try {
+			final List<String> projectNames = new ArrayList<String>();
+			final List<String> sourceFilePaths = new ArrayList<String>();
+			final List<String> classFilePlatformURIs = new ArrayList<String>();
+			workspace.run(new IWorkspaceRunnable() {
+
+				@Override
+				public void run(IProgressMonitor monitor) throws CoreException {
+					// only projects created by this generator are left (see
+					// above)
+					for (IProject project : root.getProjects()) {
+						project.delete(true, true, null);
+					}
+					progress.worked(1);
+
+					SubMonitor createProgress = progress.newChild(1).setWorkRemaining(projectCount);
+					Random random = new Random(seed);
+					for (int i = 0; i < projectCount; i++) {
+						String projectName = getProjectName(i);
+						createProject(root, i, random, sourceFilePaths, classFilePlatformURIs);
+						projectNames.add(projectName);
+						createProgress.worked(1);
+					}
+				}
+			}, progress.newChild(1));
+
+			workspace.build(IncrementalProjectBuilder.FULL_BUILD, progress.newChild(1));
+			return new SyntheticWorkspace(projectNames, sourceFilePaths, classFilePlatformURIs);
+		} finally {
+			IWorkspaceDescription currentDescription = workspace.getDescription();
+			currentDescription.setAutoBuilding(autoBuilding);
+			workspace.setDescription(currentDescription);
+		}
+	}
+
+	private void createProject(IWorkspaceRoot root, int projectIndex, Random random, List<String> sourceFilePaths,
+			List<String> classFilePlatformURIs) throws CoreException {
+
+		String projectName = getProjectName(projectIndex);
+		IProject project = root.getProject(projectName);
+		project.create(null);
+		project.open(null);
+
+		IProjectDescription description = project.getDescription();
+		description.setNatureIds(new String[] { JavaCore.NATURE_ID });
+		ICommand command = description.newCommand();
+		command.setBuilderName(JAVA_BUILDER_ID);
+		description.setBuildSpec(new ICommand[] { command });
+		project.setDescription(description, null);
+
+		List<IClasspathEntry> classpath = new ArrayList<IClasspathEntry>();
+		for (int i = 0; i < sourceFoldersPerProject; i++) {
+			IFolder sourceFolder = project.getFolder(new Path(getSourceFolderName(i)));
+			sourceFolder.create(true, true, null);
+			classpath.add(JavaCore.newSourceEntry(sourceFolder.getFullPath()));
+		}
+		classpath.add(JavaCore.newContainerEntry(new Path(JRE_CONTAINER)));
+		if (projectIndex > 0) {
+			IPath requiredProject = new Path("/" + getProjectName(projectIndex - 1));
+			classpath.add(JavaCore.newProjectEntry(requiredProject));
+		}
+		IFolder outputFolder = project.getFolder(new Path(OUTPUT_FOLDER));
+		outputFolder.create(true, true, null);
+		IJavaProject javaProject = JavaCore.create(project);
+		javaProject.setRawClasspath(classpath.toArray(new IClasspathEntry[classpath.size()]),
+				outputFolder.getFullPath(), null);
+
+		for (int p = 0; p < packagesPerProject; p++) {
+			String sourceFolderName = getSourceFolderName(p % sourceFoldersPerProject);
+			String packageName = getPackageName(projectIndex, p);
+			IFolder packageFolder = project.getFolder(new Path(sourceFolderName).append(packageName));
+			packageFolder.create(true, true, null);
+			for (int t = 0; t < typesPerPackage; t++) {
+				String typeName = getTypeName(t);
+				IFile file = packageFolder.getFile(new Path(typeName + ".java"));
+				String content = createTypeContent(projectIndex, packageName, typeName, random);
+				file.create(new ByteArrayInputStream(getBytes(content)), true, null);
+				sourceFilePaths.add(file.getFullPath().toString());
+				classFilePlatformURIs.add("/" + projectName + "/" + OUTPUT_FOLDER + "/" + packageName + "/"
+						+ typeName + ".class");
+			}
+		}
+	}
+
+	private String createTypeContent(int projectIndex, String packageName, String typeName, Random random) {
+		StringBuilder content = new StringBuilder();
+		content.append("package ").append(packageName).append(";\n\n");
+		content.append("public class ").append(typeName).append(" {\n\n");
+		for (int i = 0; i < fanOut; i++) {
+			// half of the references point to the required project
+			int referencedProject = projectIndex;
+			if (projectIndex > 0 && random.nextBoolean()) {
+				referencedProject = projectIndex - 1;
+			}
+			String referencedPackage = getPackageName(referencedProject, random.nextInt(packagesPerProject));
+			String referencedType = getTypeName(random.nextInt(typesPerPackage));
+			content.append("\tpublic ").append(referencedPackage).append('.').append(referencedType);
+			content.append(" field").append(i).append(";\n");
+		}
+		content.append("}\n");
+		return content.toString();
+	}
+
+	private byte[] getBytes(String content) {
+		try {
+			return content.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private String getProjectName(int projectIndex) {
+		return PROJECT_PREFIX + projectIndex;
+	}
+
+	private String getSourceFolderName(int sourceFolderIndex) {
+		return "src" + sourceFolderIndex;
+	}
+
+	private String getPackageName(int projectIndex, int packageIndex) {
+		return "p" + projectIndex + "_" + packageIndex;
+	}
+
+	private String getTypeName(int typeIndex) {
+		return "T" + typeIndex;
+	}
+}